@@ -2,6 +2,9 @@ package org.example.startup.config;
 
 import org.example.startup.model.Product;
 import org.example.startup.repository.ProductRepository;
+import org.example.startup.service.ProductFacetService;
+import org.example.startup.service.ProductIndexService;
+import org.example.startup.service.ProductSearchIndex;
 import org.example.startup.service.RedissonStockService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,22 +26,34 @@ public class ApplicationStartupListener implements ApplicationRunner {
     @Autowired
     private RedissonStockService redissonStockService;
 
+    @Autowired
+    private ProductIndexService productIndexService;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private ProductFacetService productFacetService;
+
     @Override
     public void run(ApplicationArguments args) throws Exception {
         logger.info("应用启动，开始同步商品库存到Redis...");
         
         try {
             List<Product> products = productRepository.findAll();
-            int syncCount = 0;
+            // 只写入Redis中尚不存在的库存：数据库库存落后于Redis，滚动发布时其他节点仍在扣减
+            redissonStockService.batchSeedStock(products);
+            
+            logger.info("库存预热完成，共检查 {} 个商品", products.size());
+            
+            // 重建商品排序索引
+            productIndexService.rebuild(products);
             
-            for (Product product : products) {
-                if (product.getId() != null && product.getStock() != null) {
-                    redissonStockService.initStock(product.getId(), product.getStock());
-                    syncCount++;
-                }
-            }
+            // 构建商品全文检索索引
+            productSearchIndex.rebuild(products);
             
-            logger.info("库存同步完成，共同步 {} 个商品的库存信息到Redis", syncCount);
+            // 构建商品分面计数
+            productFacetService.rebuild(products);
         } catch (Exception e) {
             logger.error("库存同步失败: {}", e.getMessage(), e);
         }
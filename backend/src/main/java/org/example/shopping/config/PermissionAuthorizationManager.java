@@ -0,0 +1,80 @@
+package org.example.startup.config;
+
+import org.example.startup.service.PermissionRegistry;
+import org.example.startup.util.VerifiedToken;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.authorization.AuthorizationResult;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.function.Supplier;
+
+/**
+ * 按权限位图鉴权
+ * 主体为已验证令牌时直接检查对应的权限位（O(1)），不再逐个比较权限名称；
+ * 其他类型的主体退回到按权限名称匹配。
+ * 在 SecurityConfig 中注册：.requestMatchers(...).access(PermissionAuthorizationManager.hasPermission(registry, "PRODUCT_WRITE"))
+ */
+public class PermissionAuthorizationManager<T> implements AuthorizationManager<T> {
+
+    private final PermissionRegistry permissionRegistry;
+    private final String permission;
+
+    // 首次鉴权时解析位序号，避免在配置阶段访问数据库；权限尚不存在时不缓存，下次重新解析
+    private volatile int bit = -1;
+
+    private PermissionAuthorizationManager(PermissionRegistry permissionRegistry, String permission) {
+        this.permissionRegistry = permissionRegistry;
+        this.permission = permission;
+    }
+
+    public static <T> PermissionAuthorizationManager<T> hasPermission(PermissionRegistry permissionRegistry, String permission) {
+        return new PermissionAuthorizationManager<>(permissionRegistry, permission);
+    }
+
+    @Override
+    public AuthorizationResult authorize(Supplier<Authentication> authentication, T object) {
+        return new AuthorizationDecision(isGranted(authentication.get()));
+    }
+
+    /**
+     * 接口要求实现的旧入口，委托给 authorize
+     */
+    @Deprecated
+    @Override
+    public AuthorizationDecision check(Supplier<Authentication> authentication, T object) {
+        return new AuthorizationDecision(isGranted(authentication.get()));
+    }
+
+    private boolean isGranted(Authentication current) {
+        if (current == null || !current.isAuthenticated()) {
+            return false;
+        }
+        if (current.getPrincipal() instanceof VerifiedToken) {
+            return ((VerifiedToken) current.getPrincipal()).hasPermission(resolveBit());
+        }
+        for (GrantedAuthority authority : current.getAuthorities()) {
+            if (permission.equals(authority.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int resolveBit() {
+        int resolved = bit;
+        if (resolved < 0) {
+            resolved = permissionRegistry.bitOf(permission);
+            if (resolved >= 0) {
+                bit = resolved;
+            }
+        }
+        return resolved;
+    }
+
+    @Override
+    public String toString() {
+        return "hasPermission('" + permission + "')";
+    }
+}
@@ -59,6 +59,9 @@ public class RedissonConfig {
                 .setRetryAttempts(retryAttempts)
                 .setRetryInterval(retryInterval);
         
+        // 脚本按SHA缓存，重复执行Lua脚本时只发送EVALSHA
+        config.setUseScriptCache(true);
+        
         // 如果有密码则设置密码
         if (redisPassword != null && !redisPassword.trim().isEmpty()) {
             config.useSingleServer().setPassword(redisPassword);
@@ -1,16 +1,21 @@
 package org.example.startup.config;
 
 import org.example.startup.filter.JwtAuthenticationFilter;
+import org.example.startup.filter.RateLimitFilter;
+import org.example.startup.service.PermissionRegistry;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 import java.util.Arrays;
@@ -23,6 +28,12 @@ public class SecurityConfig {
     @Autowired
     private JwtAuthenticationFilter jwtAuthenticationFilter;
     
+    @Autowired
+    private RateLimitFilter rateLimitFilter;
+    
+    @Autowired
+    private PermissionRegistry permissionRegistry;
+    
     @Value("${cors.allowed-origins}")
     private String allowedOrigins;
     
@@ -48,6 +59,14 @@ public class SecurityConfig {
             })) // 启用CORS支持，配置从配置文件读取
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(auth -> auth
+                // 异步分派（如长轮询的DeferredResult）沿用原始请求的鉴权结果
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                // 商品和库存的写操作按权限位鉴权，须在商品公开规则之前匹配
+                .requestMatchers(HttpMethod.POST, "/api/products", "/api/products/**").access(permission("PRODUCT_WRITE"))
+                .requestMatchers(HttpMethod.PUT, "/api/products/**").access(permission("PRODUCT_WRITE"))
+                .requestMatchers(HttpMethod.DELETE, "/api/products/**").access(permission("PRODUCT_DELETE"))
+                .requestMatchers(HttpMethod.GET, "/api/stock/**").access(permission("PRODUCT_READ"))
+                .requestMatchers("/api/stock/**").access(permission("PRODUCT_WRITE"))
                 // 公开接口
                 .requestMatchers("/api/user/login", "/api/user/register", "/api/products", "/api/products/**").permitAll()
                 // 静态资源
@@ -63,7 +82,16 @@ public class SecurityConfig {
                 // 其他接口需要认证
                 .anyRequest().authenticated()
             )
-            .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
+            .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
+            // 限流放在JWT认证之后，已登录用户按用户ID计数
+            .addFilterAfter(rateLimitFilter, JwtAuthenticationFilter.class);
         return http.build();
     }
-}
\ No newline at end of file
+    
+    /**
+     * 按权限位图判断当前用户是否拥有指定权限
+     */
+    private PermissionAuthorizationManager<RequestAuthorizationContext> permission(String name) {
+        return PermissionAuthorizationManager.hasPermission(permissionRegistry, name);
+    }
+}
@@ -0,0 +1,59 @@
+package org.example.startup.controller;
+
+import org.example.startup.filter.RateLimitFilter;
+import org.example.startup.service.CheckoutQueueService;
+import org.example.startup.service.LastLoginRecorder;
+import org.example.startup.service.LoginService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 管理接口，仅管理员可访问（见 SecurityConfig 中的 /api/admin/**）
+ */
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    @Autowired
+    private CheckoutQueueService checkoutQueueService;
+
+    @Autowired
+    private LoginService loginService;
+
+    @Autowired
+    private LastLoginRecorder lastLoginRecorder;
+
+    @Autowired
+    private RateLimitFilter rateLimitFilter;
+
+    /**
+     * 获取异步结账队列统计信息
+     */
+    @GetMapping("/checkout/stats")
+    public ResponseEntity<?> getCheckoutStats() {
+        return ResponseEntity.ok(checkoutQueueService.getStats());
+    }
+
+    /**
+     * 获取登录线程池和最后登录时间写入统计信息
+     */
+    @GetMapping("/login/stats")
+    public ResponseEntity<Map<String, Object>> getLoginStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("executor", loginService.getStats());
+        stats.put("lastLogin", lastLoginRecorder.getStats());
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * 获取接口限流统计信息
+     */
+    @GetMapping("/rate-limit/stats")
+    public ResponseEntity<Map<String, Object>> getRateLimitStats() {
+        return ResponseEntity.ok(rateLimitFilter.getStats());
+    }
+}
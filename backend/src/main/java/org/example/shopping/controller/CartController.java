@@ -2,12 +2,15 @@ package org.example.startup.controller;
 
 import org.example.startup.dto.CartItemDto;
 import org.example.startup.service.CartService;
-import org.example.startup.util.JwtUtil;
+import org.example.startup.service.CheckoutQueueService;
+import org.example.startup.util.VerifiedToken;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import jakarta.servlet.http.HttpServletRequest;
 import java.util.List;
@@ -21,7 +24,11 @@ public class CartController {
     private CartService cartService;
     
     @Autowired
-    private JwtUtil jwtUtil;
+    private CheckoutQueueService checkoutQueueService;
+    
+    // 长轮询的最长等待时间
+    @Value("${checkout.ticket.max-wait-ms:30000}")
+    private long maxWaitMillis;
     
     /**
      * 添加商品到购物车
@@ -31,7 +38,7 @@ public class CartController {
             @RequestBody AddToCartRequest request,
             HttpServletRequest httpRequest) {
         try {
-            Long userId = getUserIdFromToken(httpRequest);
+            Long userId = VerifiedToken.currentUserId(httpRequest);
             CartItemDto cartItem = cartService.addToCart(userId, request.getProductId(), request.getQuantity());
             return ResponseEntity.ok(cartItem);
         } catch (Exception e) {
@@ -45,7 +52,7 @@ public class CartController {
     @GetMapping
     public ResponseEntity<?> getCartItems(HttpServletRequest httpRequest) {
         try {
-            Long userId = getUserIdFromToken(httpRequest);
+            Long userId = VerifiedToken.currentUserId(httpRequest);
             List<CartItemDto> cartItems = cartService.getCartItems(userId);
             return ResponseEntity.ok(cartItems);
         } catch (Exception e) {
@@ -61,7 +68,7 @@ public class CartController {
             @RequestBody UpdateCartRequest request,
             HttpServletRequest httpRequest) {
         try {
-            Long userId = getUserIdFromToken(httpRequest);
+            Long userId = VerifiedToken.currentUserId(httpRequest);
             CartItemDto cartItem = cartService.updateCartItemQuantity(
                     userId, request.getProductId(), request.getQuantity());
             return ResponseEntity.ok(cartItem);
@@ -78,7 +85,7 @@ public class CartController {
             @PathVariable Long productId,
             HttpServletRequest httpRequest) {
         try {
-            Long userId = getUserIdFromToken(httpRequest);
+            Long userId = VerifiedToken.currentUserId(httpRequest);
             cartService.removeFromCart(userId, productId);
             return ResponseEntity.ok(Map.of("message", "商品已从购物车删除"));
         } catch (Exception e) {
@@ -92,7 +99,7 @@ public class CartController {
     @DeleteMapping("/clear")
     public ResponseEntity<?> clearCart(HttpServletRequest httpRequest) {
         try {
-            Long userId = getUserIdFromToken(httpRequest);
+            Long userId = VerifiedToken.currentUserId(httpRequest);
             cartService.clearCart(userId);
             return ResponseEntity.ok(Map.of("message", "购物车已清空"));
         } catch (Exception e) {
@@ -106,7 +113,7 @@ public class CartController {
     @GetMapping("/summary")
     public ResponseEntity<?> getCartSummary(HttpServletRequest httpRequest) {
         try {
-            Long userId = getUserIdFromToken(httpRequest);
+            Long userId = VerifiedToken.currentUserId(httpRequest);
             CartService.CartSummary summary = cartService.getCartSummary(userId);
             return ResponseEntity.ok(summary);
         } catch (Exception e) {
@@ -120,7 +127,7 @@ public class CartController {
     @PostMapping("/checkout")
     public ResponseEntity<?> checkout(HttpServletRequest httpRequest) {
         try {
-            Long userId = getUserIdFromToken(httpRequest);
+            Long userId = VerifiedToken.currentUserId(httpRequest);
             CartService.CheckoutResult result = cartService.checkout(userId);
             return ResponseEntity.ok(result);
         } catch (Exception e) {
@@ -129,28 +136,58 @@ public class CartController {
     }
     
     /**
-     * 从Spring Security上下文中获取用户ID（临时调试版本）
+     * 异步结账：入队后立即返回结账凭证，队列已满时返回429
      */
-    private Long getUserIdFromToken(HttpServletRequest request) {
-        // 优先从Spring Security的Authentication对象获取用户信息
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        if (authentication != null && authentication.isAuthenticated() && 
-            !"anonymousUser".equals(authentication.getPrincipal())) {
-            String username = authentication.getName();
-            // 这里可以通过用户名查询用户ID，或者从JWT中直接获取
-            // 暂时从JWT token中获取用户ID
+    @PostMapping("/checkout/async")
+    public ResponseEntity<?> checkoutAsync(HttpServletRequest httpRequest) {
+        try {
+            Long userId = VerifiedToken.currentUserId(httpRequest);
+            CheckoutQueueService.CheckoutTicket ticket = checkoutQueueService.submit(userId);
+            Map<String, Object> body = ticket.toResponse();
+            body.put("queueDepth", checkoutQueueService.getQueueDepth());
+            return ResponseEntity.accepted().body(body);
+        } catch (CheckoutQueueService.QueueFullException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
+    }
+    
+    /**
+     * 查询异步结账结果
+     * wait > 0 时长轮询：结账未完成则挂起请求（不占用Tomcat线程），完成或超时后返回当前状态
+     */
+    @GetMapping("/checkout/tickets/{ticketId}")
+    public DeferredResult<ResponseEntity<?>> getCheckoutTicket(
+            @PathVariable String ticketId,
+            @RequestParam(defaultValue = "0") long wait,
+            HttpServletRequest httpRequest) {
+        long timeout = Math.min(Math.max(wait, 0), maxWaitMillis);
+        DeferredResult<ResponseEntity<?>> deferred = new DeferredResult<>(timeout > 0 ? timeout : null);
         
-        // 从Authorization header获取JWT token
-        String authHeader = request.getHeader("Authorization");
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            String token = authHeader.substring(7);
-            return jwtUtil.getUserIdFromToken(token);
+        CheckoutQueueService.CheckoutTicket ticket;
+        try {
+            ticket = checkoutQueueService.getTicket(ticketId, VerifiedToken.currentUserId(httpRequest));
+        } catch (Exception e) {
+            deferred.setResult(ResponseEntity.badRequest().body(Map.of("error", e.getMessage())));
+            return deferred;
+        }
+        if (ticket == null) {
+            deferred.setResult(ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "结账凭证不存在或已过期")));
+            return deferred;
+        }
+        if (ticket.isDone() || timeout == 0) {
+            deferred.setResult(ResponseEntity.ok(ticket.toResponse()));
+            return deferred;
         }
         
-        throw new RuntimeException("无法获取用户ID，请检查认证状态");
+        deferred.onTimeout(() -> deferred.setResult(ResponseEntity.ok(ticket.toResponse())));
+        ticket.getCompletion().thenAccept(done -> deferred.setResult(ResponseEntity.ok(done.toResponse())));
+        return deferred;
     }
-
+    
     public static class AddToCartRequest {
         private Long productId;
         private Integer quantity;
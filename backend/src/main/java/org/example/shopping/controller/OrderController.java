@@ -0,0 +1,38 @@
+package org.example.startup.controller;
+
+import org.example.startup.dto.CursorPage;
+import org.example.startup.dto.OrderDto;
+import org.example.startup.service.OrderService;
+import org.example.startup.util.VerifiedToken;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import jakarta.servlet.http.HttpServletRequest;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/orders")
+public class OrderController {
+    
+    @Autowired
+    private OrderService orderService;
+    
+    /**
+     * 分页查询当前用户的订单
+     * 使用键集分页：首次请求不传cursor，之后传入上一页返回的nextCursor
+     */
+    @GetMapping
+    public ResponseEntity<?> getOrders(
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "20") int size,
+            HttpServletRequest httpRequest) {
+        try {
+            Long userId = VerifiedToken.currentUserId(httpRequest);
+            CursorPage<OrderDto> orders = orderService.getOrders(userId, cursor, size);
+            return ResponseEntity.ok(orders);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -1,14 +1,26 @@
 package org.example.startup.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.example.startup.model.Product;
+import org.example.startup.service.CatalogSnapshotService;
+import org.example.startup.service.PopularityService;
 import org.example.startup.service.ProductService;
+import org.example.startup.service.RedissonStockService;
+import org.example.startup.service.StaticSiteGenerator;
+import org.example.startup.dto.CursorPage;
 import org.example.startup.dto.PageResponse;
+import org.example.startup.dto.ProductSummary;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("api/products")
@@ -17,43 +29,162 @@ public class ProductController {
     @Autowired
     private ProductService productService;
     
+    @Autowired
+    private CatalogSnapshotService catalogSnapshotService;
+    
+    @Autowired
+    private StaticSiteGenerator staticSiteGenerator;
+    
+    @Autowired
+    private PopularityService popularityService;
+    
+    @Autowired
+    private RedissonStockService redissonStockService;
+    
+    // 前若干页列表以预序列化快照返回
+    @Value("${catalog.snapshot.max-pages:5}")
+    private int snapshotMaxPages;
+    
     @GetMapping
     public ResponseEntity<?> getAllProducts(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "8") int size,
-            @RequestParam(defaultValue = "popularity") String sort) {
+            @RequestParam(defaultValue = "popularity") String sort,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) String search,
+            @RequestParam(required = false) String category,
+            HttpServletRequest request) {
         try {
+            // 带检索词时走全文检索
+            if (search != null && !search.isBlank()) {
+                return ResponseEntity.ok(productService.searchProducts(search, page, size));
+            }
+            
+            // 传入after参数时使用游标分页（after为空字符串表示第一页），返回nextCursor且不统计总数
+            if (after != null) {
+                CursorPage<ProductSummary> cursorPage = productService.getProductsAfter(after, size, sort);
+                return new ResponseEntity<>(cursorPage, HttpStatus.OK);
+            }
+            
+            // 热门的前几页直接返回预序列化快照
+            if (page >= 0 && page < snapshotMaxPages && size > 0) {
+                String categoryKey = category != null ? category : "";
+                CatalogSnapshotService.Snapshot snapshot = catalogSnapshotService.get(
+                        "page:" + categoryKey + ":" + sort + ":" + page + ":" + size,
+                        () -> productService.getProductsWithPagination(page, size, sort, category));
+                return writeSnapshot(snapshot, request);
+            }
+            
             // 如果没有分页参数，返回所有产品（保持向后兼容）
             if (page == 0 && size == 8 && "popularity".equals(sort)) {
                 // 检查是否有其他查询参数，如果没有则可能是简单的获取所有产品请求
-                PageResponse<Product> pageResponse = productService.getProductsWithPagination(page, size, sort);
+                PageResponse<ProductSummary> pageResponse = productService.getProductsWithPagination(page, size, sort, category);
                 return new ResponseEntity<>(pageResponse, HttpStatus.OK);
             } else {
                 // 明确的分页请求
-                PageResponse<Product> pageResponse = productService.getProductsWithPagination(page, size, sort);
+                PageResponse<ProductSummary> pageResponse = productService.getProductsWithPagination(page, size, sort, category);
                 return new ResponseEntity<>(pageResponse, HttpStatus.OK);
             }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+    
+    /**
+     * 全文检索商品
+     * @param q 检索文本，支持中英文混合
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> searchProducts(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            return ResponseEntity.ok(productService.searchProducts(q, page, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
     
+    /**
+     * 获取全部分类，按商品数降序
+     */
+    @GetMapping("/categories")
+    public ResponseEntity<?> getCategories() {
+        return ResponseEntity.ok(Map.of("data", productService.getCategories()));
+    }
+    
+    /**
+     * 获取分面计数
+     * @param category 指定分类时价格区间和有货计数只统计该分类
+     */
+    @GetMapping("/facets")
+    public ResponseEntity<?> getFacets(@RequestParam(required = false) String category) {
+        return ResponseEntity.ok(productService.getFacets(category));
+    }
+    
+    /**
+     * 获取商品缓存命中、未命中、淘汰统计
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<?> getCacheStats() {
+        return ResponseEntity.ok(productService.getCacheStats());
+    }
+    
+    /**
+     * 获取人气计分统计
+     */
+    @GetMapping("/popularity/stats")
+    public ResponseEntity<?> getPopularityStats() {
+        return ResponseEntity.ok(popularityService.getStats());
+    }
+    
+    /**
+     * 获取静态页生成统计
+     */
+    @GetMapping("/ssg/stats")
+    public ResponseEntity<?> getStaticSiteStats() {
+        return ResponseEntity.ok(staticSiteGenerator.getStats());
+    }
+    
     @GetMapping("/all")
-    public ResponseEntity<List<Product>> getAllProductsList() {
+    public ResponseEntity<?> getAllProductsList(HttpServletRequest request) {
+        try {
+            CatalogSnapshotService.Snapshot snapshot = catalogSnapshotService.get("all", productService::getAllProducts);
+            return writeSnapshot(snapshot, request);
+        } catch (Exception e) {
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+    
+    /**
+     * 批量查询商品，用一次请求代替逐个查询
+     * @param ids 商品ID列表，逗号分隔，如 ids=1,2,3
+     * @return 按请求顺序排列的商品和不存在的商品ID
+     */
+    @GetMapping("/batch")
+    public ResponseEntity<?> getProductsByIds(@RequestParam List<Long> ids) {
         try {
-            List<Product> products = productService.getAllProducts();
-            return new ResponseEntity<>(products, HttpStatus.OK);
+            return ResponseEntity.ok(productService.getProductsByIds(ids));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
     
     @GetMapping("/{id}")
-    public ResponseEntity<Product> getProductById(@PathVariable Long id) {
+    public ResponseEntity<?> getProductById(@PathVariable Long id, HttpServletRequest request) {
         try {
-            Product product = productService.getProductById(id);
-            if (product != null) {
-                return new ResponseEntity<>(product, HttpStatus.OK);
+            CatalogSnapshotService.Snapshot snapshot = catalogSnapshotService.get(
+                    "product:" + id, () -> productService.getProductById(id));
+            if (snapshot != null) {
+                popularityService.recordView(id);
+                return writeSnapshot(snapshot, request);
             } else {
                 return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
             }
@@ -62,6 +193,33 @@ public class ProductController {
         }
     }
     
+    /**
+     * 写出快照字节：ETag匹配时返回304，客户端支持gzip时直接写出预压缩结果
+     */
+    private ResponseEntity<?> writeSnapshot(CatalogSnapshotService.Snapshot snapshot, HttpServletRequest request) {
+        CacheControl cacheControl = CacheControl.noCache().cachePublic();
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+        String etag = gzip ? snapshot.getGzipEtag() : snapshot.getEtag();
+        if (snapshot.matches(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .cacheControl(cacheControl)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+        
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(snapshot.getGzip());
+        }
+        return builder.body(snapshot.getJson());
+    }
+    
     @PostMapping
     public ResponseEntity<Product> createProduct(@RequestBody Product product) {
         try {
@@ -72,6 +230,11 @@ public class ProductController {
         }
     }
     
+    /**
+     * 编辑商品
+     * 请求体中的 popularity 和 stock 会被忽略：人气由浏览、加购、下单事件累计，
+     * 库存通过 /{id}/stock 系列接口修改；返回值中为当前的实际人气和库存
+     */
     @PutMapping("/{id}")
     public ResponseEntity<Product> updateProduct(@PathVariable Long id, @RequestBody Product product) {
         try {
@@ -104,10 +267,10 @@ public class ProductController {
     }
     
     /**
-     * 更新产品库存
+     * 设置产品库存，覆盖Redis中的实时库存，由异步落库写回数据库
      * @param id 产品ID
      * @param stock 新的库存数量
-     * @return 更新后的产品信息
+     * @return 更新后的库存信息
      */
     @PutMapping("/{id}/stock")
      public ResponseEntity<?> updateProductStock(@PathVariable Long id, @RequestParam Integer stock) {
@@ -116,24 +279,22 @@ public class ProductController {
                 return new ResponseEntity<>("库存数量不能为负数", HttpStatus.BAD_REQUEST);
             }
             
-            Product existingProduct = productService.getProductById(id);
-            if (existingProduct != null) {
-                existingProduct.setStock(stock);
-                Product updatedProduct = productService.saveProduct(existingProduct);
-                return new ResponseEntity<>(updatedProduct, HttpStatus.OK);
-            } else {
+            Product product = productService.getProductById(id);
+            if (product == null) {
                 return new ResponseEntity<>("产品不存在", HttpStatus.NOT_FOUND);
             }
+            redissonStockService.initStock(id, stock);
+            return new ResponseEntity<>(new StockInfo(id, product.getName(), stock), HttpStatus.OK);
         } catch (Exception e) {
             return new ResponseEntity<>("更新库存失败", HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
     
     /**
-     * 减少产品库存（用于下单等场景）
+     * 减少产品库存（用于下单等场景），在Redis中原子扣减
      * @param id 产品ID
      * @param quantity 减少的数量
-     * @return 更新后的产品信息
+     * @return 更新后的库存信息
      */
     @PutMapping("/{id}/stock/reduce")
      public ResponseEntity<?> reduceProductStock(@PathVariable Long id, @RequestParam Integer quantity) {
@@ -142,29 +303,29 @@ public class ProductController {
                 return new ResponseEntity<>("减少数量必须大于0", HttpStatus.BAD_REQUEST);
             }
             
-            Product existingProduct = productService.getProductById(id);
-            if (existingProduct != null) {
-                Integer currentStock = existingProduct.getStock();
-                if (currentStock < quantity) {
-                    return new ResponseEntity<>("库存不足，当前库存: " + currentStock, HttpStatus.BAD_REQUEST);
-                }
-                
-                existingProduct.setStock(currentStock - quantity);
-                Product updatedProduct = productService.saveProduct(existingProduct);
-                return new ResponseEntity<>(updatedProduct, HttpStatus.OK);
-            } else {
+            Product product = productService.getProductById(id);
+            // 读取库存时会在Redis库存不存在时从数据库加载
+            if (product == null || redissonStockService.getStock(id) == null) {
                 return new ResponseEntity<>("产品不存在", HttpStatus.NOT_FOUND);
             }
+            Long remaining = redissonStockService.deductStock(id, quantity);
+            if (remaining == -2) {
+                return new ResponseEntity<>("库存不足，当前库存: " + redissonStockService.getStock(id), HttpStatus.BAD_REQUEST);
+            }
+            if (remaining < 0) {
+                return new ResponseEntity<>("减少库存失败", HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+            return new ResponseEntity<>(new StockInfo(id, product.getName(), remaining.intValue()), HttpStatus.OK);
         } catch (Exception e) {
             return new ResponseEntity<>("减少库存失败", HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
     
     /**
-     * 增加产品库存（用于进货等场景）
+     * 增加产品库存（用于进货等场景），在Redis中原子增加
      * @param id 产品ID
      * @param quantity 增加的数量
-     * @return 更新后的产品信息
+     * @return 更新后的库存信息
      */
     @PutMapping("/{id}/stock/add")
      public ResponseEntity<?> addProductStock(@PathVariable Long id, @RequestParam Integer quantity) {
@@ -173,15 +334,12 @@ public class ProductController {
                 return new ResponseEntity<>("增加数量必须大于0", HttpStatus.BAD_REQUEST);
             }
             
-            Product existingProduct = productService.getProductById(id);
-            if (existingProduct != null) {
-                Integer currentStock = existingProduct.getStock();
-                existingProduct.setStock(currentStock + quantity);
-                Product updatedProduct = productService.saveProduct(existingProduct);
-                return new ResponseEntity<>(updatedProduct, HttpStatus.OK);
-            } else {
+            Product product = productService.getProductById(id);
+            if (product == null) {
                 return new ResponseEntity<>("产品不存在", HttpStatus.NOT_FOUND);
             }
+            Long stock = redissonStockService.addStock(id, quantity);
+            return new ResponseEntity<>(new StockInfo(id, product.getName(), stock.intValue()), HttpStatus.OK);
         } catch (Exception e) {
             return new ResponseEntity<>("增加库存失败", HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -197,7 +355,9 @@ public class ProductController {
         try {
             Product product = productService.getProductById(id);
             if (product != null) {
-                return new ResponseEntity<>(new StockInfo(product.getId(), product.getName(), product.getStock()), HttpStatus.OK);
+                // 缓存的商品和数据库中的库存都落后于Redis，库存从Redis读取
+                Integer stock = redissonStockService.getStock(id);
+                return new ResponseEntity<>(new StockInfo(id, product.getName(), stock != null ? stock : 0), HttpStatus.OK);
             } else {
                 return new ResponseEntity<>("产品不存在", HttpStatus.NOT_FOUND);
             }
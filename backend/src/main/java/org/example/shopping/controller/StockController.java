@@ -1,6 +1,8 @@
 package org.example.startup.controller;
 
 import org.example.startup.service.RedissonStockService;
+import org.example.startup.service.StockNearCache;
+import org.example.startup.service.StockWriteBehindService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -14,6 +16,12 @@ public class StockController {
     @Autowired
     private RedissonStockService redissonStockService;
 
+    @Autowired
+    private StockWriteBehindService stockWriteBehindService;
+
+    @Autowired
+    private StockNearCache stockNearCache;
+
     /**
      * 获取商品库存
      */
@@ -85,4 +93,64 @@ public class StockController {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
+
+    /**
+     * 为热点商品启用分段库存（秒杀模式）
+     */
+    @PostMapping("/segments/{productId}")
+    public ResponseEntity<?> enableSegments(@PathVariable Long productId, @RequestBody Map<String, Integer> request) {
+        try {
+            Integer segments = request.get("segments");
+            if (segments == null) {
+                return ResponseEntity.badRequest().body(Map.of("error", "分段数不能为空"));
+            }
+            
+            long stock = redissonStockService.enableSegments(productId, segments);
+            return ResponseEntity.ok(Map.of(
+                "message", "分段库存已启用",
+                "productId", productId,
+                "segments", segments,
+                "stock", stock
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * 关闭商品的分段库存，合并回单个计数器
+     */
+    @DeleteMapping("/segments/{productId}")
+    public ResponseEntity<?> disableSegments(@PathVariable Long productId) {
+        try {
+            long stock = redissonStockService.disableSegments(productId);
+            return ResponseEntity.ok(Map.of(
+                "message", "分段库存已关闭",
+                "productId", productId,
+                "stock", stock
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * 获取库存异步落库统计（积压、延迟、批大小）
+     */
+    @GetMapping("/write-behind/stats")
+    public ResponseEntity<?> getWriteBehindStats() {
+        try {
+            return ResponseEntity.ok(stockWriteBehindService.getStats());
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * 获取库存近端缓存统计（命中率、售罄商品数）
+     */
+    @GetMapping("/near-cache/stats")
+    public ResponseEntity<?> getNearCacheStats() {
+        return ResponseEntity.ok(stockNearCache.getStats());
+    }
 }
\ No newline at end of file
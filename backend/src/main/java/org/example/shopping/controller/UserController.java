@@ -1,12 +1,14 @@
 package org.example.startup.controller;
 
 import org.springframework.web.bind.annotation.*;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.example.startup.service.LoginService;
 import org.example.startup.service.UserService;
 import org.example.startup.model.User;
 import org.example.startup.model.Role;
-import org.example.startup.util.JwtUtil;
+import org.example.startup.util.VerifiedToken;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -17,6 +19,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/user")
@@ -26,17 +29,36 @@ public class UserController {
     private UserService userService;
     
     @Autowired
-    private JwtUtil jwtUtil;
+    private LoginService loginService;
+    
 
     @GetMapping("/index")
     public String index(HttpServletRequest request) {
         return "hello";
     }
     
+    /**
+     * 登录：密码校验在登录线程池中执行，不占用请求线程；登录队列已满时返回503
+     */
     @PostMapping("/login")
-    public ResponseEntity<Map<String, Object>> login(@RequestBody User user, HttpServletRequest request) {
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> login(@RequestBody User user, HttpServletRequest request) {
+        CompletableFuture<User> verification;
         try {
-            User loginUser = userService.login(user.getUsername(), user.getPassword());
+            verification = loginService.login(user.getUsername(), user.getPassword());
+        } catch (LoginService.LoginBusyException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(response));
+        }
+        
+        return verification.handle((loginUser, error) -> {
+            if (error != null) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("message", "登录异常");
+                return new ResponseEntity<>(response, HttpStatus.INTERNAL_SERVER_ERROR);
+            }
             if (loginUser != null) {
                 // 生成JWT令牌
                 String token = userService.generateToken(loginUser);
@@ -50,21 +72,13 @@ public class UserController {
                     "email", loginUser.getEmail() != null ? loginUser.getEmail() : "",
                     "roles", loginUser.getRoles().stream().map(Role::getName).toList()
                 ));
-                
-
                 return new ResponseEntity<>(response, HttpStatus.OK);
             } else {
                 Map<String, Object> response = new HashMap<>();
                 response.put("message", "用户名或密码错误");
-                
-
                 return new ResponseEntity<>(response, HttpStatus.UNAUTHORIZED);
             }
-        } catch (Exception e) {
-            Map<String, Object> response = new HashMap<>();
-            response.put("message", "登录异常");
-            return new ResponseEntity<>(response, HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+        });
     }
     
     @PostMapping("/register")
@@ -112,7 +126,7 @@ public class UserController {
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
     public ResponseEntity<?> getBalance(HttpServletRequest httpRequest) {
         try {
-            Long userId = getUserIdFromToken(httpRequest);
+            Long userId = VerifiedToken.currentUserId(httpRequest);
             User user = userService.findById(userId);
             if (user == null) {
                 return ResponseEntity.badRequest().body(Map.of("error", "用户不存在"));
@@ -130,7 +144,7 @@ public class UserController {
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
     public ResponseEntity<?> recharge(@RequestBody RechargeRequest request, HttpServletRequest httpRequest) {
         try {
-            Long userId = getUserIdFromToken(httpRequest);
+            Long userId = VerifiedToken.currentUserId(httpRequest);
             User user = userService.findById(userId);
             if (user == null) {
                 return ResponseEntity.badRequest().body(Map.of("error", "用户不存在"));
@@ -155,18 +169,6 @@ public class UserController {
         }
     }
     
-    /**
-     * 从JWT token中获取用户ID
-     */
-    private Long getUserIdFromToken(HttpServletRequest request) {
-        String authHeader = request.getHeader("Authorization");
-        if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            String token = authHeader.substring(7);
-            return jwtUtil.getUserIdFromToken(token);
-        }
-        throw new RuntimeException("无法获取用户ID，请检查认证状态");
-    }
-    
     /**
      * 充值请求DTO
      */
@@ -0,0 +1,55 @@
+package org.example.startup.dto;
+
+import java.util.List;
+
+/**
+ * 键集分页结果，nextCursor 为下一页的游标，没有更多数据时为null
+ */
+public class CursorPage<T> {
+    private List<T> content;
+    private String nextCursor;
+    private boolean hasMore;
+    private int size;
+    
+    public CursorPage() {}
+    
+    public CursorPage(List<T> content, String nextCursor, boolean hasMore, int size) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+        this.size = size;
+    }
+    
+    // Getters and Setters
+    public List<T> getContent() {
+        return content;
+    }
+    
+    public void setContent(List<T> content) {
+        this.content = content;
+    }
+    
+    public String getNextCursor() {
+        return nextCursor;
+    }
+    
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+    
+    public boolean isHasMore() {
+        return hasMore;
+    }
+    
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+    
+    public int getSize() {
+        return size;
+    }
+    
+    public void setSize(int size) {
+        this.size = size;
+    }
+}
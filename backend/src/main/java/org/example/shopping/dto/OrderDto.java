@@ -0,0 +1,89 @@
+package org.example.startup.dto;
+
+import org.example.startup.model.Order;
+import org.example.startup.model.OrderLine;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class OrderDto {
+    private Long id;
+    private BigDecimal totalAmount;
+    private Integer itemCount;
+    private Integer totalQuantity;
+    private String status;
+    private LocalDateTime createdAt;
+    private List<LineDto> lines;
+    
+    public OrderDto() {}
+    
+    public OrderDto(Order order, List<OrderLine> lines) {
+        this.id = order.getId();
+        this.totalAmount = order.getTotalAmount();
+        this.itemCount = order.getItemCount();
+        this.totalQuantity = order.getTotalQuantity();
+        this.status = order.getStatus();
+        this.createdAt = order.getCreatedAt();
+        this.lines = lines.stream().map(LineDto::new).collect(Collectors.toList());
+    }
+    
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    
+    public BigDecimal getTotalAmount() { return totalAmount; }
+    public void setTotalAmount(BigDecimal totalAmount) { this.totalAmount = totalAmount; }
+    
+    public Integer getItemCount() { return itemCount; }
+    public void setItemCount(Integer itemCount) { this.itemCount = itemCount; }
+    
+    public Integer getTotalQuantity() { return totalQuantity; }
+    public void setTotalQuantity(Integer totalQuantity) { this.totalQuantity = totalQuantity; }
+    
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    
+    public List<LineDto> getLines() { return lines; }
+    public void setLines(List<LineDto> lines) { this.lines = lines; }
+    
+    /**
+     * 订单明细
+     */
+    public static class LineDto {
+        private Long productId;
+        private String productName;
+        private BigDecimal unitPrice;
+        private Integer quantity;
+        private BigDecimal lineAmount;
+        
+        public LineDto() {}
+        
+        public LineDto(OrderLine line) {
+            this.productId = line.getProductId();
+            this.productName = line.getProductName();
+            this.unitPrice = line.getUnitPrice();
+            this.quantity = line.getQuantity();
+            this.lineAmount = line.getLineAmount();
+        }
+        
+        public Long getProductId() { return productId; }
+        public void setProductId(Long productId) { this.productId = productId; }
+        
+        public String getProductName() { return productName; }
+        public void setProductName(String productName) { this.productName = productName; }
+        
+        public BigDecimal getUnitPrice() { return unitPrice; }
+        public void setUnitPrice(BigDecimal unitPrice) { this.unitPrice = unitPrice; }
+        
+        public Integer getQuantity() { return quantity; }
+        public void setQuantity(Integer quantity) { this.quantity = quantity; }
+        
+        public BigDecimal getLineAmount() { return lineAmount; }
+        public void setLineAmount(BigDecimal lineAmount) { this.lineAmount = lineAmount; }
+    }
+}
@@ -0,0 +1,27 @@
+package org.example.startup.dto;
+
+import org.example.startup.model.Product;
+
+import java.math.BigDecimal;
+
+/**
+ * 商品列表卡片使用的轻量投影，不包含完整的商品描述
+ * description 只截取前101个字符：卡片展示前100个字符，多出的一个字符用于前端判断是否显示省略号
+ */
+public record ProductSummary(Long id, String name, String description, BigDecimal price,
+                             String imageUrl, Integer popularity, Integer stock, String category) {
+
+    public static final int DESCRIPTION_PREVIEW_LENGTH = 101;
+
+    /**
+     * 由完整商品（如缓存中的商品）转换
+     */
+    public static ProductSummary from(Product product) {
+        String description = product.getDescription();
+        if (description != null && description.length() > DESCRIPTION_PREVIEW_LENGTH) {
+            description = description.substring(0, DESCRIPTION_PREVIEW_LENGTH);
+        }
+        return new ProductSummary(product.getId(), product.getName(), description, product.getPrice(),
+                product.getImageUrl(), product.getPopularity(), product.getStock(), product.getCategory());
+    }
+}
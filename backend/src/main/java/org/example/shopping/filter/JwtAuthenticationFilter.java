@@ -5,10 +5,10 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.example.startup.util.JwtUtil;
+import org.example.startup.util.VerifiedToken;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
@@ -18,9 +18,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
@@ -28,41 +25,32 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     
     @Autowired
     private JwtUtil jwtUtil;
+    
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, 
                                     FilterChain filterChain) throws ServletException, IOException {
         try {
             String token = getJwtFromRequest(request);
             
-            if (StringUtils.hasText(token)) {
-                String username = jwtUtil.getUsernameFromToken(token);
-                if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                    // 验证令牌
-                    if (jwtUtil.validateToken(token, username)) {
-                        // 从令牌中获取角色和权限信息
-                        String roles = jwtUtil.getRolesFromToken(token);
-                        String permissions = jwtUtil.getPermissionsFromToken(token);
-
-                        // 创建权限列表
-                        List<SimpleGrantedAuthority> authorities = createAuthorities(roles, permissions);
-                        
-                        // 创建认证对象
-                        UsernamePasswordAuthenticationToken authentication = 
-                                new UsernamePasswordAuthenticationToken(username, null, authorities);
-                        authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                        
-                        // 设置到安全上下文
-                        SecurityContextHolder.getContext().setAuthentication(authentication);
-                        
-                        // 用户通过JWT认证成功
-                    }
-                }
+            if (StringUtils.hasText(token) && SecurityContextHolder.getContext().getAuthentication() == null) {
+                // 只解析验签一次（过期、签名错误时抛出异常），后续统一读取验证结果
+                VerifiedToken verified = jwtUtil.verify(token);
+                request.setAttribute(VerifiedToken.REQUEST_ATTRIBUTE, verified);
+                
+                // 创建认证对象，主体为已验证的令牌
+                UsernamePasswordAuthenticationToken authentication = 
+                        new UsernamePasswordAuthenticationToken(verified, null, verified.getAuthorities());
+                authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                
+                // 设置到安全上下文
+                SecurityContextHolder.getContext().setAuthentication(authentication);
             }
         } catch (Exception e) {
             logger.error("JWT authentication failed: ", e);
             response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
             response.setContentType("application/json");
-            response.getWriter().write("{\"error\":\"Authentication failed: " + e.getMessage().replace("\"", "\\\"") + "\"}");
+            String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            response.getWriter().write("{\"error\":\"Authentication failed: " + message.replace("\"", "\\\"") + "\"}");
             return;
         }
         
@@ -79,25 +67,4 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
         return null;
     }
-    
-    /**
-     * 创建权限列表
-     */
-    private List<SimpleGrantedAuthority> createAuthorities(String roles, String permissions) {
-        List<SimpleGrantedAuthority> authorities = Arrays.stream(roles.split(","))
-                .filter(StringUtils::hasText)
-                .map(role -> new SimpleGrantedAuthority("ROLE_" + role.trim()))
-                .collect(Collectors.toList());
-        
-        // 添加权限
-        if (StringUtils.hasText(permissions)) {
-            List<SimpleGrantedAuthority> permissionAuthorities = Arrays.stream(permissions.split(","))
-                    .filter(StringUtils::hasText)
-                    .map(permission -> new SimpleGrantedAuthority(permission.trim()))
-                    .collect(Collectors.toList());
-            authorities.addAll(permissionAuthorities);
-        }
-        
-        return authorities;
-    }
 }
\ No newline at end of file
@@ -0,0 +1,264 @@
+package org.example.startup.filter;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.example.startup.util.LocalCache;
+import org.example.startup.util.VerifiedToken;
+import org.redisson.api.RRateLimiter;
+import org.redisson.api.RateIntervalUnit;
+import org.redisson.api.RateType;
+import org.redisson.api.RedissonClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 接口限流过滤器
+ * 按配置的路由规则对登录、结账等高开销接口限流，已登录用户按用户ID计数，未登录按客户端IP计数。
+ * 本地模式每个计数键只保存一个下次理论到达时间（GCRA算法，等价于令牌桶），用CAS无锁更新；
+ * 桶恢复满额后的空闲条目定时清除，内存占用与活跃客户端数成正比。
+ * 开启Redis模式时使用Redisson限流器在集群内共享额度，Redis不可用时退回本地计数。
+ * 超出限额返回429并带 Retry-After 头。
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitFilter.class);
+
+    private static final String REDIS_KEY_PREFIX = "ratelimit:";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Value("${rate-limit.enabled:true}")
+    private boolean enabled;
+
+    // 规则格式：方法 路径=维度:次数:周期毫秒，多条以分号分隔；方法为*时匹配全部方法，维度为 user 或 ip
+    @Value("${rate-limit.rules:POST /api/user/login=ip:10:60000;POST /api/cart/checkout/**=user:5:10000}")
+    private String rulesConfig;
+
+    // 是否按Redis在集群内共享额度
+    @Value("${rate-limit.redis.enabled:false}")
+    private boolean redisEnabled;
+
+    // 是否信任 X-Forwarded-For（仅在反向代理之后开启）
+    @Value("${rate-limit.trust-forwarded-for:false}")
+    private boolean trustForwardedFor;
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private List<Rule> rules;
+
+    // 计数键 -> 下次理论到达时间（纳秒）
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    // 已初始化的Redis限流器，过期后重新设置速率并续期
+    private LocalCache<String, RRateLimiter> redisLimiters;
+
+    // 统计信息
+    private final AtomicLong allowed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong redisFailures = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        rules = parseRules(rulesConfig);
+        redisLimiters = new LocalCache<>(10000, 60000);
+        logger.info("接口限流规则: {}，Redis模式: {}", rules, redisEnabled);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || rules.isEmpty();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        Rule rule = match(request);
+        if (rule != null) {
+            String key = rule.id + ":" + clientKey(request, rule);
+            long retryAfterNanos = redisEnabled ? acquireRedis(rule, key) : acquireLocal(rule, key);
+            if (retryAfterNanos > 0) {
+                rejected.incrementAndGet();
+                long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(retryAfterNanos + 999_999_999L));
+                response.setStatus(429);
+                response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+                response.setContentType("application/json;charset=UTF-8");
+                response.getWriter().write("{\"error\":\"请求过于频繁，请稍后重试\"}");
+                return;
+            }
+            allowed.incrementAndGet();
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * 本地GCRA限流
+     * @return 0表示放行，否则为需要等待的纳秒数
+     */
+    long acquireLocal(Rule rule, String key) {
+        long now = System.nanoTime();
+        AtomicLong tat = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        while (true) {
+            long current = tat.get();
+            long next = Math.max(current, now) + rule.intervalNanos;
+            // 超出突发容量时拒绝，不消耗额度
+            long wait = next - now - rule.periodNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (tat.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Redis限流，Redis不可用时退回本地计数
+     */
+    private long acquireRedis(Rule rule, String key) {
+        try {
+            RRateLimiter limiter = redisLimiters.get(key);
+            if (limiter == null) {
+                limiter = redissonClient.getRateLimiter(REDIS_KEY_PREFIX + key);
+                limiter.trySetRate(RateType.OVERALL, rule.limit, rule.periodMillis, RateIntervalUnit.MILLISECONDS);
+                // 空闲超过两个周期的限流器由Redis自动删除
+                limiter.expire(Duration.ofMillis(Math.max(rule.periodMillis * 2, 60000)));
+                redisLimiters.put(key, limiter);
+            }
+            return limiter.tryAcquire() ? 0 : rule.intervalNanos;
+        } catch (Exception e) {
+            redisFailures.incrementAndGet();
+            return acquireLocal(rule, key);
+        }
+    }
+
+    /**
+     * 定时清除已恢复满额的计数条目
+     */
+    @Scheduled(fixedDelayString = "${rate-limit.cleanup-interval-ms:60000}")
+    public void evictIdle() {
+        long now = System.nanoTime();
+        buckets.entrySet().removeIf(entry -> entry.getValue().get() - now <= 0);
+    }
+
+    /**
+     * 获取限流统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("allowed", allowed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("trackedKeys", buckets.size());
+        stats.put("redisFailures", redisFailures.get());
+        return stats;
+    }
+
+    private Rule match(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        String method = request.getMethod();
+        for (Rule rule : rules) {
+            if ((rule.method == null || rule.method.equalsIgnoreCase(method)) && pathMatcher.match(rule.pattern, path)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private String clientKey(HttpServletRequest request, Rule rule) {
+        if (rule.perUser) {
+            VerifiedToken token = VerifiedToken.fromRequest(request);
+            if (token != null && token.getUserId() != null) {
+                return "u" + token.getUserId();
+            }
+        }
+        return "ip" + clientIp(request);
+    }
+
+    private String clientIp(HttpServletRequest request) {
+        if (trustForwardedFor) {
+            String forwarded = request.getHeader("X-Forwarded-For");
+            if (StringUtils.hasText(forwarded)) {
+                int comma = forwarded.indexOf(',');
+                return (comma >= 0 ? forwarded.substring(0, comma) : forwarded).trim();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    static List<Rule> parseRules(String config) {
+        List<Rule> parsed = new ArrayList<>();
+        if (!StringUtils.hasText(config)) {
+            return parsed;
+        }
+        for (String entry : config.split(";")) {
+            if (!StringUtils.hasText(entry)) {
+                continue;
+            }
+            String[] route = entry.trim().split("=", 2);
+            String[] target = route[0].trim().split("\\s+", 2);
+            String[] limit = route.length > 1 ? route[1].trim().split(":") : new String[0];
+            if (target.length != 2 || limit.length != 3) {
+                throw new IllegalArgumentException("限流规则格式错误: " + entry);
+            }
+            String method = "*".equals(target[0]) ? null : target[0];
+            boolean perUser = "user".equalsIgnoreCase(limit[0]);
+            if (!perUser && !"ip".equalsIgnoreCase(limit[0])) {
+                throw new IllegalArgumentException("限流维度只能是 user 或 ip: " + entry);
+            }
+            parsed.add(new Rule(parsed.size(), method, target[1], perUser,
+                    Long.parseLong(limit[1]), Long.parseLong(limit[2])));
+        }
+        return parsed;
+    }
+
+    static class Rule {
+        private final int id;
+        private final String method;
+        private final String pattern;
+        private final boolean perUser;
+        private final long limit;
+        private final long periodMillis;
+        // 每次请求消耗的时间额度，以及允许的突发窗口
+        private final long intervalNanos;
+        private final long periodNanos;
+
+        Rule(int id, String method, String pattern, boolean perUser, long limit, long periodMillis) {
+            if (limit <= 0 || periodMillis <= 0) {
+                throw new IllegalArgumentException("限流次数和周期必须大于0: " + pattern);
+            }
+            this.id = id;
+            this.method = method;
+            this.pattern = pattern;
+            this.perUser = perUser;
+            this.limit = limit;
+            this.periodMillis = periodMillis;
+            this.periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+            this.intervalNanos = periodNanos / limit;
+        }
+
+        @Override
+        public String toString() {
+            return (method != null ? method : "*") + " " + pattern + "=" + (perUser ? "user" : "ip")
+                    + ":" + limit + ":" + periodMillis;
+        }
+    }
+}
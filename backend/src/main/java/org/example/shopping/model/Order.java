@@ -0,0 +1,109 @@
+package org.example.startup.model;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// ORDER是JPQL关键字，实体名使用CustomerOrder避免查询解析歧义
+@Entity(name = "CustomerOrder")
+@Table(name = "orders", indexes = {
+    @Index(name = "idx_user_id_id", columnList = "user_id, id")
+})
+public class Order {
+    public static final String STATUS_PAID = "PAID";
+    
+    // 按号段预分配ID（不使用IDENTITY），同一事务内的插入才能被Hibernate合并为JDBC批量
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "order_id")
+    @TableGenerator(name = "order_id", table = "id_sequences", pkColumnName = "seq_name",
+            valueColumnName = "next_val", pkColumnValue = "orders", allocationSize = 50)
+    private Long id;
+    
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    
+    @Column(name = "total_amount", nullable = false, precision = 12, scale = 2)
+    private BigDecimal totalAmount;
+    
+    @Column(name = "item_count", nullable = false)
+    private Integer itemCount;
+    
+    @Column(name = "total_quantity", nullable = false)
+    private Integer totalQuantity;
+    
+    @Column(nullable = false, length = 32)
+    private String status;
+    
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+    
+    public Order() {
+        this.createdAt = LocalDateTime.now();
+    }
+    
+    public Order(Long userId, BigDecimal totalAmount, Integer itemCount, Integer totalQuantity, String status) {
+        this();
+        this.userId = userId;
+        this.totalAmount = totalAmount;
+        this.itemCount = itemCount;
+        this.totalQuantity = totalQuantity;
+        this.status = status;
+    }
+    
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public Long getUserId() {
+        return userId;
+    }
+    
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+    
+    public BigDecimal getTotalAmount() {
+        return totalAmount;
+    }
+    
+    public void setTotalAmount(BigDecimal totalAmount) {
+        this.totalAmount = totalAmount;
+    }
+    
+    public Integer getItemCount() {
+        return itemCount;
+    }
+    
+    public void setItemCount(Integer itemCount) {
+        this.itemCount = itemCount;
+    }
+    
+    public Integer getTotalQuantity() {
+        return totalQuantity;
+    }
+    
+    public void setTotalQuantity(Integer totalQuantity) {
+        this.totalQuantity = totalQuantity;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
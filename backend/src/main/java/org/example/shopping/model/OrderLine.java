@@ -0,0 +1,104 @@
+package org.example.startup.model;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+
+@Entity
+@Table(name = "order_lines", indexes = {
+    @Index(name = "idx_order_id", columnList = "order_id")
+})
+public class OrderLine {
+    // 按号段预分配ID，使明细可以批量插入
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "order_line_id")
+    @TableGenerator(name = "order_line_id", table = "id_sequences", pkColumnName = "seq_name",
+            valueColumnName = "next_val", pkColumnValue = "order_lines", allocationSize = 200)
+    private Long id;
+    
+    @Column(name = "order_id", nullable = false)
+    private Long orderId;
+    
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+    
+    // 下单时的商品名称和单价快照，商品后续修改不影响历史订单
+    @Column(name = "product_name", nullable = false)
+    private String productName;
+    
+    @Column(name = "unit_price", nullable = false, precision = 10, scale = 2)
+    private BigDecimal unitPrice;
+    
+    @Column(nullable = false)
+    private Integer quantity;
+    
+    @Column(name = "line_amount", nullable = false, precision = 12, scale = 2)
+    private BigDecimal lineAmount;
+    
+    public OrderLine() {}
+    
+    public OrderLine(Long orderId, Long productId, String productName, BigDecimal unitPrice, Integer quantity) {
+        this.orderId = orderId;
+        this.productId = productId;
+        this.productName = productName;
+        this.unitPrice = unitPrice;
+        this.quantity = quantity;
+        this.lineAmount = unitPrice.multiply(BigDecimal.valueOf(quantity));
+    }
+    
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public Long getOrderId() {
+        return orderId;
+    }
+    
+    public void setOrderId(Long orderId) {
+        this.orderId = orderId;
+    }
+    
+    public Long getProductId() {
+        return productId;
+    }
+    
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+    
+    public String getProductName() {
+        return productName;
+    }
+    
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+    
+    public BigDecimal getUnitPrice() {
+        return unitPrice;
+    }
+    
+    public void setUnitPrice(BigDecimal unitPrice) {
+        this.unitPrice = unitPrice;
+    }
+    
+    public Integer getQuantity() {
+        return quantity;
+    }
+    
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+    
+    public BigDecimal getLineAmount() {
+        return lineAmount;
+    }
+    
+    public void setLineAmount(BigDecimal lineAmount) {
+        this.lineAmount = lineAmount;
+    }
+}
@@ -1,11 +1,22 @@
 package org.example.startup.model;
 
 import jakarta.persistence.*;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import org.hibernate.annotations.UpdateTimestamp;
+
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "products")
+@Table(name = "products", indexes = {
+    // 游标分页的排序键：(popularity DESC, id DESC) 反向扫描、(price ASC, id ASC) 正向扫描
+    @Index(name = "idx_popularity_id", columnList = "popularity, id"),
+    @Index(name = "idx_price_id", columnList = "price, id"),
+    // 分类筛选列表
+    @Index(name = "idx_category_popularity_id", columnList = "category, popularity, id"),
+    @Index(name = "idx_category_price_id", columnList = "category, price, id")
+})
 public class Product {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -24,12 +35,23 @@ public class Product {
     @JsonProperty("imageUrl")
     private String imageUrl;
     
-    @Column
+    // 人气只由 PopularityService 按增量SQL更新，保存商品时不写回，避免覆盖期间累加的人气；编辑接口忽略请求中的人气
+    @Column(updatable = false)
     private Integer popularity;
     
-    @Column(nullable = false)
+    // 库存以Redis为准，由异步落库按SQL写回；保存商品时不写回，避免用滞后的库存覆盖已售出的数量
+    @Column(nullable = false, updatable = false)
     private Integer stock = 0;
     
+    @Column(length = 64)
+    private String category;
+    
+    // 每次保存时更新，静态页生成据此判断商品是否变化
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    @JsonIgnore
+    private LocalDateTime updatedAt;
+    
     public Product() {}
     
     public Product(String name, String description, BigDecimal price, String imageUrl, Integer popularity) {
@@ -113,4 +135,20 @@ public class Product {
     public void setStock(Integer stock) {
         this.stock = stock;
     }
+    
+    public String getCategory() {
+        return category;
+    }
+    
+    public void setCategory(String category) {
+        this.category = category;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
 }
\ No newline at end of file
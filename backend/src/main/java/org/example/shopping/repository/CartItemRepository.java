@@ -1,7 +1,9 @@
 package org.example.startup.repository;
 
 import org.example.startup.model.CartItem;
+import org.example.startup.store.CartTotals;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -23,6 +25,17 @@ public interface CartItemRepository extends JpaRepository<CartItem, Long> {
      */
     Optional<CartItem> findByUserIdAndProductId(Long userId, Long productId);
     
+    /**
+     * 原子地新增购物车项或累加数量，依赖 (user_id, product_id) 唯一约束，只锁定该用户的这一行
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "INSERT INTO cart_items (user_id, product_id, quantity, created_at, updated_at) " +
+            "VALUES (:userId, :productId, :quantity, NOW(), NOW()) " +
+            "ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity), updated_at = NOW()",
+            nativeQuery = true)
+    int upsertQuantity(@Param("userId") Long userId, @Param("productId") Long productId,
+                       @Param("quantity") Integer quantity);
+    
     /**
      * 根据用户ID删除所有购物车项
      */
@@ -45,6 +58,14 @@ public interface CartItemRepository extends JpaRepository<CartItem, Long> {
     @Query("SELECT COALESCE(SUM(c.quantity), 0) FROM CartItem c WHERE c.userId = :userId")
     Long sumQuantityByUserId(@Param("userId") Long userId);
     
+    /**
+     * 聚合计算用户购物车的商品种类数、总数量和总金额
+     */
+    @Query("SELECT new org.example.startup.store.CartTotals(COUNT(c), COALESCE(SUM(c.quantity), 0L), " +
+            "COALESCE(SUM(c.quantity * p.price), 0)) " +
+            "FROM CartItem c LEFT JOIN c.product p WHERE c.userId = :userId")
+    CartTotals sumTotalsByUserId(@Param("userId") Long userId);
+    
     /**
      * 检查用户是否已将某商品加入购物车
      */
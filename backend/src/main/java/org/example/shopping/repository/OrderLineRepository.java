@@ -0,0 +1,17 @@
+package org.example.startup.repository;
+
+import org.example.startup.model.OrderLine;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OrderLineRepository extends JpaRepository<OrderLine, Long> {
+    
+    /**
+     * 批量查询多个订单的明细
+     */
+    List<OrderLine> findByOrderIdInOrderByIdAsc(Collection<Long> orderIds);
+}
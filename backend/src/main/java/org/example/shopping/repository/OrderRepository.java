@@ -0,0 +1,26 @@
+package org.example.startup.repository;
+
+import org.example.startup.model.Order;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OrderRepository extends JpaRepository<Order, Long> {
+    
+    /**
+     * 查询用户最新的订单（第一页）
+     */
+    @Query("SELECT o FROM CustomerOrder o WHERE o.userId = :userId ORDER BY o.id DESC")
+    List<Order> findLatestByUserId(@Param("userId") Long userId, Pageable pageable);
+    
+    /**
+     * 键集分页：查询ID小于游标的订单，走 (user_id, id) 索引，翻页深度不影响性能
+     */
+    @Query("SELECT o FROM CustomerOrder o WHERE o.userId = :userId AND o.id < :cursor ORDER BY o.id DESC")
+    List<Order> findByUserIdBefore(@Param("userId") Long userId, @Param("cursor") Long cursor, Pageable pageable);
+}
@@ -1,10 +1,86 @@
 package org.example.startup.repository;
 
+import org.example.startup.dto.ProductSummary;
 import org.example.startup.model.Product;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.List;
 
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Long> {
     
-}
\ No newline at end of file
+    /**
+     * 商品列表投影，只读取卡片需要的列，描述截取前101个字符
+     */
+    String SUMMARY_SELECT = "SELECT new org.example.startup.dto.ProductSummary(p.id, p.name, " +
+            "SUBSTRING(p.description, 1, 101), p.price, p.imageUrl, p.popularity, p.stock, p.category) FROM Product p";
+    
+    /**
+     * 分页查询商品列表投影
+     */
+    @Query(value = SUMMARY_SELECT, countQuery = "SELECT COUNT(p) FROM Product p")
+    Page<ProductSummary> findSummaries(Pageable pageable);
+    
+    /**
+     * 分页查询分类下的商品列表投影，总数由分面计数提供，不执行COUNT查询
+     */
+    @Query(SUMMARY_SELECT + " WHERE p.category = :category")
+    List<ProductSummary> findSummariesByCategory(@Param("category") String category, Pageable pageable);
+    
+    /**
+     * 查询全部商品列表投影
+     */
+    @Query(SUMMARY_SELECT)
+    List<ProductSummary> findAllSummaries();
+    
+    /**
+     * 查询全部商品的ID和最后更新时间，用于增量生成静态页
+     */
+    @Query("SELECT p.id, p.updatedAt FROM Product p")
+    List<Object[]> findAllVersions();
+    
+    /**
+     * 按人气降序的第一页（游标分页）
+     */
+    @Query(SUMMARY_SELECT + " ORDER BY p.popularity DESC, p.id DESC")
+    List<ProductSummary> findFirstByPopularity(Pageable pageable);
+    
+    /**
+     * 按人气降序查询游标之后的商品，走 (popularity, id) 索引反向扫描
+     * 外层的 popularity <= :popularity 为索引提供范围边界
+     */
+    @Query(SUMMARY_SELECT + " WHERE p.popularity <= :popularity " +
+            "AND (p.popularity < :popularity OR p.id < :id) " +
+            "ORDER BY p.popularity DESC, p.id DESC")
+    List<ProductSummary> findAfterByPopularity(@Param("popularity") Integer popularity, @Param("id") Long id, Pageable pageable);
+    
+    /**
+     * 按价格升序的第一页（游标分页）
+     */
+    @Query(SUMMARY_SELECT + " ORDER BY p.price ASC, p.id ASC")
+    List<ProductSummary> findFirstByPrice(Pageable pageable);
+    
+    /**
+     * 按价格升序查询游标之后的商品，走 (price, id) 索引正向扫描
+     */
+    @Query(SUMMARY_SELECT + " WHERE p.price >= :price " +
+            "AND (p.price > :price OR p.id > :id) " +
+            "ORDER BY p.price ASC, p.id ASC")
+    List<ProductSummary> findAfterByPrice(@Param("price") BigDecimal price, @Param("id") Long id, Pageable pageable);
+    
+    /**
+     * 更新商品库存，库存列不随实体保存写回（Redis中的库存为准）
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Product p SET p.stock = :stock WHERE p.id = :id")
+    int updateStock(@Param("id") Long id, @Param("stock") Integer stock);
+}
@@ -2,89 +2,94 @@ package org.example.startup.service;
 
 import org.example.startup.dto.CartItemDto;
 import org.example.startup.model.CartItem;
+import org.example.startup.model.Order;
 import org.example.startup.model.Product;
 import org.example.startup.model.User;
-import org.example.startup.repository.CartItemRepository;
-import org.example.startup.repository.ProductRepository;
 import org.example.startup.repository.UserRepository;
+import org.example.startup.store.CartStore;
+import org.example.startup.store.CartTotals;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
 @Transactional
 public class CartService {
     
+    private static final Logger logger = LoggerFactory.getLogger(CartService.class);
+    
     @Autowired
-    private CartItemRepository cartItemRepository;
+    private CartStore cartStore;
     
     @Autowired
-    private ProductRepository productRepository;
+    private ProductCache productCache;
     
     @Autowired
     private UserRepository userRepository;
     
     @Autowired
-    private RedisLockService redisLockService;
+    private RedissonStockService redissonStockService;
     
     @Autowired
-    private RedissonStockService redissonStockService;
+    private OrderService orderService;
+    
+    @Autowired
+    private PopularityService popularityService;
     
     /**
      * 添加商品到购物车
+     * 购物车按用户隔离，库存只读不预占，因此不再加商品级分布式锁；
+     * 并发只发生在同一用户的同一商品上，由购物车存储原子地累加
      */
     public CartItemDto addToCart(Long userId, Long productId, Integer quantity) {
-        return redisLockService.executeWithLock(productId, 10, () -> {
-            // 检查商品是否存在
-            Product product = productRepository.findById(productId)
-                    .orElseThrow(() -> new RuntimeException("商品不存在"));
-            
-            // 从Redis检查库存
-            Integer currentStock = redissonStockService.getStock(productId);
-            if (currentStock == null || currentStock < quantity) {
-                throw new RuntimeException("库存不足，当前库存: " + (currentStock != null ? currentStock : 0));
-            }
-            
-            // 检查是否已存在该商品
-            Optional<CartItem> existingItem = cartItemRepository.findByUserIdAndProductId(userId, productId);
-            
-            CartItem cartItem;
-            if (existingItem.isPresent()) {
-                // 更新数量
-                cartItem = existingItem.get();
-                int newQuantity = cartItem.getQuantity() + quantity;
-                
-                // 再次检查库存
-                if (currentStock < newQuantity) {
-                    throw new RuntimeException("库存不足，当前库存: " + currentStock + 
-                            "，购物车已有: " + cartItem.getQuantity());
-                }
-                
-                cartItem.setQuantity(newQuantity);
-            } else {
-                // 创建新的购物车项
-                cartItem = new CartItem(userId, productId, quantity);
-            }
-            
-            cartItem = cartItemRepository.save(cartItem);
-            
-            // 手动设置product关联，用于DTO转换
-            cartItem.setProduct(product);
-            
-            return new CartItemDto(cartItem);
-        });
+        // 检查商品是否存在
+        Product product = productCache.get(productId);
+        if (product == null) {
+            throw new RuntimeException("商品不存在");
+        }
+        
+        // 从Redis检查库存
+        Integer currentStock = redissonStockService.getStock(productId);
+        if (currentStock == null || currentStock < quantity) {
+            throw new RuntimeException("库存不足，当前库存: " + (currentStock != null ? currentStock : 0));
+        }
+        
+        // 新增或累加数量
+        long unitPrice = CartTotals.toMinorUnits(product.getPrice());
+        int newQuantity = cartStore.addQuantity(userId, productId, quantity, unitPrice);
+        
+        // 再次检查库存，超出时撤销本次累加（Redis存储不参与数据库事务，需要显式补偿）
+        if (currentStock < newQuantity) {
+            cartStore.addQuantity(userId, productId, -quantity, unitPrice);
+            throw new RuntimeException("库存不足，当前库存: " + currentStock + 
+                    "，购物车已有: " + (newQuantity - quantity));
+        }
+        
+        popularityService.recordAddToCart(productId);
+        
+        // 手动设置product关联，用于DTO转换
+        CartItem cartItem = new CartItem(userId, productId, newQuantity);
+        cartItem.setProduct(product);
+        
+        return new CartItemDto(cartItem);
     }
     
     /**
      * 获取用户购物车
      */
     public List<CartItemDto> getCartItems(Long userId) {
-        List<CartItem> cartItems = cartItemRepository.findByUserIdWithProduct(userId);
+        List<CartItem> cartItems = loadCartItems(userId);
         return cartItems.stream()
                 .map(CartItemDto::new)
                 .collect(Collectors.toList());
@@ -98,21 +103,23 @@ public class CartService {
             throw new RuntimeException("数量必须大于0");
         }
         
-        CartItem cartItem = cartItemRepository.findByUserIdAndProductId(userId, productId)
-                .orElseThrow(() -> new RuntimeException("购物车中没有该商品"));
-        
         // 检查库存
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new RuntimeException("商品不存在"));
+        Product product = productCache.get(productId);
+        if (product == null) {
+            throw new RuntimeException("商品不存在");
+        }
         
-        if (product.getStock() < quantity) {
-            throw new RuntimeException("库存不足，当前库存: " + product.getStock());
+        Integer currentStock = redissonStockService.getStock(productId);
+        if (currentStock == null || currentStock < quantity) {
+            throw new RuntimeException("库存不足，当前库存: " + (currentStock != null ? currentStock : 0));
         }
         
-        cartItem.setQuantity(quantity);
-        cartItem = cartItemRepository.save(cartItem);
+        if (!cartStore.setQuantity(userId, productId, quantity, CartTotals.toMinorUnits(product.getPrice()))) {
+            throw new RuntimeException("购物车中没有该商品");
+        }
         
         // 手动设置product关联
+        CartItem cartItem = new CartItem(userId, productId, quantity);
         cartItem.setProduct(product);
         
         return new CartItemDto(cartItem);
@@ -122,36 +129,27 @@ public class CartService {
      * 从购物车删除商品
      */
     public void removeFromCart(Long userId, Long productId) {
-        CartItem cartItem = cartItemRepository.findByUserIdAndProductId(userId, productId)
-                .orElseThrow(() -> new RuntimeException("购物车中没有该商品"));
-        
-        cartItemRepository.delete(cartItem);
+        if (!cartStore.remove(userId, productId)) {
+            throw new RuntimeException("购物车中没有该商品");
+        }
     }
     
     /**
      * 清空购物车
      */
     public void clearCart(Long userId) {
-        cartItemRepository.deleteByUserId(userId);
+        cartStore.clear(userId);
     }
     
     /**
      * 获取购物车统计信息
+     * 汇总随每次增删改增量维护，这里直接读取，不再加载购物车明细
      */
+    @Transactional(readOnly = true)
     public CartSummary getCartSummary(Long userId) {
-        List<CartItem> cartItems = cartItemRepository.findByUserIdWithProduct(userId);
-        
-        int totalItems = cartItems.size();
-        long totalQuantity = cartItems.stream()
-                .mapToLong(CartItem::getQuantity)
-                .sum();
-        
-        BigDecimal totalAmount = cartItems.stream()
-                .filter(item -> item.getProduct() != null && item.getProduct().getPrice() != null)
-                .map(item -> item.getProduct().getPrice().multiply(BigDecimal.valueOf(item.getQuantity())))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        
-        return new CartSummary(totalItems, totalQuantity, totalAmount);
+        CartTotals totals = cartStore.getTotals(userId);
+        return new CartSummary(totals.getTotalItems(), totals.getTotalQuantity(),
+                totals.getTotalAmount(), totals.getTotalAmountMinor());
     }
     
     /**
@@ -163,7 +161,7 @@ public class CartService {
                 .orElseThrow(() -> new RuntimeException("用户不存在"));
         
         // 获取购物车商品
-        List<CartItem> cartItems = cartItemRepository.findByUserIdWithProduct(userId);
+        List<CartItem> cartItems = loadCartItems(userId);
         if (cartItems.isEmpty()) {
             throw new RuntimeException("购物车为空");
         }
@@ -179,34 +177,87 @@ public class CartService {
             throw new RuntimeException("余额不足，当前余额: " + user.getBalance() + "，需要支付: " + totalAmount);
         }
         
-        // 使用分布式锁进行库存扣减，防止超售
+        // 一次脚本调用原子扣减整车库存，任一商品不足则全部不扣
+        Map<Long, Integer> deductions = new LinkedHashMap<>();
+        Map<Long, String> productNames = new HashMap<>();
         for (CartItem item : cartItems) {
-            Long productId = item.getProduct().getId();
-            Integer quantity = item.getQuantity();
-            
-            redisLockService.executeWithLock(productId, 10, () -> {
-                // 原子性扣减Redis库存
-                Long remainingStock = redissonStockService.deductStock(productId, quantity);
-                if (remainingStock == -1) {
-                    throw new RuntimeException("商品 " + item.getProduct().getName() + " 库存数据异常");
-                } else if (remainingStock == -2) {
-                    throw new RuntimeException("商品 " + item.getProduct().getName() + " 库存不足");
-                }
-                
-                // 同步库存到数据库
-                redissonStockService.syncStockToDB(productId);
-                return null;
-            });
+            if (item.getProduct() == null) {
+                throw new RuntimeException("购物车中的商品 " + item.getProductId() + " 已下架");
+            }
+            deductions.put(item.getProduct().getId(), item.getQuantity());
+            productNames.put(item.getProduct().getId(), item.getProduct().getName());
         }
         
+        RedissonStockService.StockDeductResult deductResult = redissonStockService.deductAll(deductions, userId);
+        if (deductResult.getCode() == -1) {
+            throw new RuntimeException("商品 " + productNames.get(deductResult.getFailedProductId()) + " 库存数据异常");
+        } else if (deductResult.getCode() == -2) {
+            throw new RuntimeException("商品 " + productNames.get(deductResult.getFailedProductId()) + " 库存不足");
+        }
+        
+        // 订单和余额在事务提交时才真正写入：提交成功后再清空购物车，回滚时（包括提交阶段失败）归还库存
+        onCompletion(userId, deductions);
+        
+        // 库存由StockWriteBehindService异步批量落库，这里不再逐个同步
+        
         // 扣减用户余额
         user.setBalance(user.getBalance().subtract(totalAmount));
         userRepository.save(user);
         
-        // 清空购物车
-        cartItemRepository.deleteByUserId(userId);
+        // 在同一事务内记录订单和明细
+        Order order = orderService.createOrder(userId, cartItems, totalAmount);
         
-        return new CheckoutResult(true, "结账成功", totalAmount, user.getBalance());
+        return new CheckoutResult(true, "结账成功", totalAmount, user.getBalance(), order.getId());
+    }
+    
+    /**
+     * 注册结账事务的提交/回滚回调
+     */
+    private void onCompletion(Long userId, Map<Long, Integer> deductions) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            redissonStockService.restoreAll(deductions);
+            throw new IllegalStateException("结账必须在事务中执行");
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    cartStore.clear(userId);
+                    deductions.forEach(popularityService::recordCheckout);
+                } catch (Exception e) {
+                    logger.error("用户 {} 结账后清空购物车失败: {}", userId, e.getMessage(), e);
+                }
+            }
+            
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    // 数据库事务已回滚，Redis中已扣减的库存需要归还
+                    redissonStockService.restoreAll(deductions);
+                } else if (status == STATUS_UNKNOWN) {
+                    logger.error("用户 {} 结账事务状态未知，库存 {} 未归还，需人工核对", userId, deductions);
+                }
+            }
+        });
+    }
+    
+    /**
+     * 读取购物车并批量关联商品信息，已删除的商品保持未关联
+     */
+    private List<CartItem> loadCartItems(Long userId) {
+        List<CartItem> cartItems = cartStore.getItems(userId);
+        if (cartItems.isEmpty()) {
+            return cartItems;
+        }
+        
+        List<Long> productIds = cartItems.stream()
+                .map(CartItem::getProductId)
+                .collect(Collectors.toList());
+        Map<Long, Product> products = productCache.getAll(productIds);
+        for (CartItem item : cartItems) {
+            item.setProduct(products.get(item.getProductId()));
+        }
+        return cartItems;
     }
     
     /**
@@ -216,22 +267,26 @@ public class CartService {
         private int totalItems;        // 商品种类数
         private long totalQuantity;   // 商品总数量
         private BigDecimal totalAmount; // 总金额
+        private long totalAmountMinor;  // 总金额（分）
         
-        public CartSummary(int totalItems, long totalQuantity, BigDecimal totalAmount) {
+        public CartSummary(int totalItems, long totalQuantity, BigDecimal totalAmount, long totalAmountMinor) {
             this.totalItems = totalItems;
             this.totalQuantity = totalQuantity;
             this.totalAmount = totalAmount;
+            this.totalAmountMinor = totalAmountMinor;
         }
         
         // Getters
         public int getTotalItems() { return totalItems; }
         public long getTotalQuantity() { return totalQuantity; }
         public BigDecimal getTotalAmount() { return totalAmount; }
+        public long getTotalAmountMinor() { return totalAmountMinor; }
         
         // Setters
         public void setTotalItems(int totalItems) { this.totalItems = totalItems; }
         public void setTotalQuantity(long totalQuantity) { this.totalQuantity = totalQuantity; }
         public void setTotalAmount(BigDecimal totalAmount) { this.totalAmount = totalAmount; }
+        public void setTotalAmountMinor(long totalAmountMinor) { this.totalAmountMinor = totalAmountMinor; }
     }
     
     /**
@@ -242,12 +297,14 @@ public class CartService {
         private String message;
         private BigDecimal totalAmount;
         private BigDecimal remainingBalance;
+        private Long orderId;
         
-        public CheckoutResult(boolean success, String message, BigDecimal totalAmount, BigDecimal remainingBalance) {
+        public CheckoutResult(boolean success, String message, BigDecimal totalAmount, BigDecimal remainingBalance, Long orderId) {
             this.success = success;
             this.message = message;
             this.totalAmount = totalAmount;
             this.remainingBalance = remainingBalance;
+            this.orderId = orderId;
         }
         
         // Getters
@@ -255,11 +312,13 @@ public class CartService {
         public String getMessage() { return message; }
         public BigDecimal getTotalAmount() { return totalAmount; }
         public BigDecimal getRemainingBalance() { return remainingBalance; }
+        public Long getOrderId() { return orderId; }
         
         // Setters
         public void setSuccess(boolean success) { this.success = success; }
         public void setMessage(String message) { this.message = message; }
         public void setTotalAmount(BigDecimal totalAmount) { this.totalAmount = totalAmount; }
         public void setRemainingBalance(BigDecimal remainingBalance) { this.remainingBalance = remainingBalance; }
+        public void setOrderId(Long orderId) { this.orderId = orderId; }
     }
 }
\ No newline at end of file
@@ -0,0 +1,200 @@
+package org.example.startup.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.example.startup.util.LocalCache;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 商品目录响应快照
+ * 将热门目录响应（首几页列表、商品详情）预先序列化为JSON字节及其gzip压缩结果，
+ * 请求时直接写出字节，并以目录版本号派生强ETag支持 If-None-Match/304。
+ * 商品保存或删除时递增目录版本号（Redis计数器，经发布订阅同步到所有节点），旧版本快照在下次访问时重建。
+ */
+@Service
+public class CatalogSnapshotService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogSnapshotService.class);
+
+    private static final String VERSION_KEY = "catalog:version";
+    private static final String VERSION_CHANNEL = "catalog:version";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${catalog.snapshot.max-size:1000}")
+    private int maxSize;
+
+    // 快照最长存活时间，使目录版本未变化时库存等字段也能定期刷新
+    @Value("${catalog.snapshot.max-age-ms:30000}")
+    private long maxAgeMillis;
+
+    private LocalCache<String, Snapshot> snapshots;
+
+    private final AtomicLong version = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        snapshots = new LocalCache<>(maxSize, maxAgeMillis);
+        try {
+            version.set(redissonClient.getAtomicLong(VERSION_KEY).get());
+            RTopic topic = redissonClient.getTopic(VERSION_CHANNEL, StringCodec.INSTANCE);
+            topic.addListener(String.class, (channel, message) -> onVersion(message));
+        } catch (Exception e) {
+            logger.warn("读取目录版本号失败，快照仅依赖过期时间刷新: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 当前目录版本号
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * 递增目录版本号并通知所有节点，使现有快照全部失效
+     */
+    public void bumpVersion() {
+        long next;
+        try {
+            next = redissonClient.getAtomicLong(VERSION_KEY).incrementAndGet();
+            redissonClient.getTopic(VERSION_CHANNEL, StringCodec.INSTANCE).publish(String.valueOf(next));
+        } catch (Exception e) {
+            logger.warn("递增目录版本号失败，仅使本节点快照失效: {}", e.getMessage());
+            next = version.get() + 1;
+        }
+        advanceTo(next);
+    }
+
+    /**
+     * 获取快照，不存在或版本已过时则通过loader加载数据并重新序列化
+     */
+    public Snapshot get(String key, Supplier<Object> loader) {
+        long current = version.get();
+        Snapshot snapshot = snapshots.get(key);
+        if (snapshot != null && snapshot.getVersion() == current) {
+            return snapshot;
+        }
+
+        // 先读取版本号再加载数据，加载期间版本变化时快照会在下次访问时被判定过时
+        Object body = loader.get();
+        if (body == null) {
+            return null;
+        }
+        snapshot = Snapshot.of(current, serialize(body));
+        snapshots.put(key, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * 获取快照统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(snapshots.getStats());
+        stats.put("version", version.get());
+        return stats;
+    }
+
+    void onVersion(String message) {
+        try {
+            advanceTo(Long.parseLong(message));
+        } catch (NumberFormatException e) {
+            logger.warn("无法解析目录版本事件: {}", message);
+        }
+    }
+
+    private void advanceTo(long next) {
+        version.accumulateAndGet(next, Math::max);
+    }
+
+    private byte[] serialize(Object body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (IOException e) {
+            throw new RuntimeException("序列化目录快照失败", e);
+        }
+    }
+
+    /**
+     * 预序列化的响应
+     */
+    public static class Snapshot {
+        private final long version;
+        private final byte[] json;
+        private final byte[] gzip;
+        private final String etag;
+        // 强校验ETag按内容编码区分，gzip响应的ETag带 -gz 后缀
+        private final String gzipEtag;
+
+        private Snapshot(long version, byte[] json, byte[] gzip, String tag) {
+            this.version = version;
+            this.json = json;
+            this.gzip = gzip;
+            this.etag = "\"" + tag + "\"";
+            this.gzipEtag = "\"" + tag + "-gz\"";
+        }
+
+        static Snapshot of(long version, byte[] json) {
+            // ETag由版本号和内容校验和组成，同一版本内容因过期重建而变化时ETag也随之变化
+            CRC32 crc = new CRC32();
+            crc.update(json);
+            String tag = "v" + version + "-" + Long.toHexString(crc.getValue());
+            return new Snapshot(version, json, gzip(json), tag);
+        }
+
+        private static byte[] gzip(byte[] data) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+            try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+                gzipOut.write(data);
+            } catch (IOException e) {
+                throw new RuntimeException("压缩目录快照失败", e);
+            }
+            return out.toByteArray();
+        }
+
+        /**
+         * 请求的 If-None-Match 是否与当前ETag匹配（两种内容编码的ETag都接受，If-None-Match 按弱比较）
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag) || tag.equals(gzipEtag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public long getVersion() { return version; }
+        public byte[] getJson() { return json; }
+        public byte[] getGzip() { return gzip; }
+        public String getEtag() { return etag; }
+        public String getGzipEtag() { return gzipEtag; }
+    }
+}
@@ -0,0 +1,256 @@
+package org.example.startup.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 异步结账队列
+ * 请求线程只负责入队并返回结账凭证，由固定数量的工作线程批量取出任务执行结账，
+ * 客户端通过凭证轮询或长轮询结果。队列深度超过阈值时直接拒绝，避免峰值流量下延迟无限增长。
+ */
+@Service
+public class CheckoutQueueService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CheckoutQueueService.class);
+
+    @Autowired
+    private CartService cartService;
+
+    // 队列深度超过该值时拒绝新的结账请求
+    @Value("${checkout.queue.max-depth:2000}")
+    private int maxDepth;
+
+    @Value("${checkout.queue.workers:4}")
+    private int workerCount;
+
+    // 工作线程每次最多取出的任务数
+    @Value("${checkout.queue.batch-size:32}")
+    private int batchSize;
+
+    // 已完成凭证的保留时间
+    @Value("${checkout.ticket.ttl-ms:300000}")
+    private long ticketTtlMillis;
+
+    private BlockingQueue<CheckoutTicket> queue;
+    private final Map<String, CheckoutTicket> tickets = new ConcurrentHashMap<>();
+    // 每个用户同一时间只保留一个未完成的凭证，重复提交返回同一凭证
+    private final Map<Long, CheckoutTicket> inFlightByUser = new ConcurrentHashMap<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    // 统计信息
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(maxDepth);
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::runWorker, "checkout-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * 提交结账任务
+     * @return 结账凭证
+     * @throws QueueFullException 队列已满
+     */
+    public CheckoutTicket submit(Long userId) {
+        CheckoutTicket ticket = new CheckoutTicket(UUID.randomUUID().toString(), userId);
+        // 先登记凭证再发布给同一用户的并发请求，保证拿到的凭证总是可查
+        tickets.put(ticket.getTicketId(), ticket);
+        CheckoutTicket existing = inFlightByUser.putIfAbsent(userId, ticket);
+        if (existing != null) {
+            tickets.remove(ticket.getTicketId());
+            return existing;
+        }
+
+        if (!queue.offer(ticket)) {
+            // 凭证可能已返回给并发的重复提交，保留为失败状态（由定时清理移除），不直接删除
+            ticket.complete(null, "结账人数过多，请稍后重试");
+            inFlightByUser.remove(userId, ticket);
+            rejected.incrementAndGet();
+            throw new QueueFullException("结账人数过多，请稍后重试");
+        }
+        submitted.incrementAndGet();
+        return ticket;
+    }
+
+    /**
+     * 查询结账凭证，不存在或不属于该用户时返回null
+     */
+    public CheckoutTicket getTicket(String ticketId, Long userId) {
+        CheckoutTicket ticket = tickets.get(ticketId);
+        if (ticket == null || !ticket.getUserId().equals(userId)) {
+            return null;
+        }
+        return ticket;
+    }
+
+    /**
+     * 当前队列深度
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * 获取结账队列统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queueDepth", queue.size());
+        stats.put("maxDepth", maxDepth);
+        stats.put("workers", workerCount);
+        stats.put("inFlight", inFlightByUser.size());
+        stats.put("submitted", submitted.get());
+        stats.put("rejected", rejected.get());
+        stats.put("succeeded", succeeded.get());
+        stats.put("failed", failed.get());
+        return stats;
+    }
+
+    /**
+     * 定时清理过期的已完成凭证
+     */
+    @Scheduled(fixedDelayString = "${checkout.ticket.cleanup-interval-ms:60000}")
+    public void cleanupTickets() {
+        long now = System.currentTimeMillis();
+        tickets.values().removeIf(ticket -> ticket.isDone() && now - ticket.getCompletedAt() > ticketTtlMillis);
+    }
+
+    private void runWorker() {
+        List<CheckoutTicket> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                for (CheckoutTicket ticket : batch) {
+                    process(ticket);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(CheckoutTicket ticket) {
+        try {
+            CartService.CheckoutResult result = cartService.checkout(ticket.getUserId());
+            succeeded.incrementAndGet();
+            ticket.complete(result, null);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            logger.warn("异步结账失败, userId: {}, 原因: {}", ticket.getUserId(), e.getMessage());
+            ticket.complete(null, e.getMessage() != null ? e.getMessage() : "结账失败");
+        } finally {
+            inFlightByUser.remove(ticket.getUserId(), ticket);
+        }
+    }
+
+    /**
+     * 结账凭证
+     */
+    public static class CheckoutTicket {
+        public static final String PENDING = "PENDING";
+        public static final String SUCCESS = "SUCCESS";
+        public static final String FAILED = "FAILED";
+
+        private final String ticketId;
+        private final Long userId;
+        private final long createdAt = System.currentTimeMillis();
+        private volatile String status = PENDING;
+        private volatile CartService.CheckoutResult result;
+        private volatile String error;
+        private volatile long completedAt;
+        private final CompletableFuture<CheckoutTicket> completion = new CompletableFuture<>();
+
+        public CheckoutTicket(String ticketId, Long userId) {
+            this.ticketId = ticketId;
+            this.userId = userId;
+        }
+
+        void complete(CartService.CheckoutResult result, String error) {
+            this.result = result;
+            this.error = error;
+            this.completedAt = System.currentTimeMillis();
+            this.status = error == null ? SUCCESS : FAILED;
+            completion.complete(this);
+        }
+
+        public boolean isDone() {
+            return !PENDING.equals(status);
+        }
+
+        /**
+         * 结账完成时完成的Future，用于长轮询
+         */
+        public CompletableFuture<CheckoutTicket> getCompletion() {
+            return completion;
+        }
+
+        /**
+         * 转换为响应体
+         */
+        public Map<String, Object> toResponse() {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("ticketId", ticketId);
+            body.put("status", status);
+            if (result != null) {
+                body.put("result", result);
+            }
+            if (error != null) {
+                body.put("error", error);
+            }
+            return body;
+        }
+
+        public String getTicketId() { return ticketId; }
+        public Long getUserId() { return userId; }
+        public long getCreatedAt() { return createdAt; }
+        public String getStatus() { return status; }
+        public CartService.CheckoutResult getResult() { return result; }
+        public String getError() { return error; }
+        public long getCompletedAt() { return completedAt; }
+    }
+
+    /**
+     * 结账队列已满
+     */
+    public static class QueueFullException extends RuntimeException {
+        public QueueFullException(String message) {
+            super(message);
+        }
+    }
+}
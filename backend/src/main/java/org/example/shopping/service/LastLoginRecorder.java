@@ -0,0 +1,105 @@
+package org.example.startup.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 最后登录时间记录
+ * 登录成功时只在内存中记下用户的最新登录时间（同一用户多次登录合并为一条），
+ * 定时批量写入 users.last_login，登录请求不再同步执行 UPDATE。
+ */
+@Service
+public class LastLoginRecorder {
+
+    private static final Logger logger = LoggerFactory.getLogger(LastLoginRecorder.class);
+
+    private static final String UPDATE_SQL = "UPDATE users SET last_login = ? WHERE id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 用户ID -> 未落库的最后登录时间
+    private final Map<Long, LocalDateTime> pending = new ConcurrentHashMap<>();
+
+    // 统计信息
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+
+    /**
+     * 记录用户登录
+     */
+    public void record(Long userId, LocalDateTime loginAt) {
+        if (userId == null) {
+            return;
+        }
+        merge(userId, loginAt);
+        recorded.incrementAndGet();
+    }
+
+    private void merge(Long userId, LocalDateTime loginAt) {
+        pending.merge(userId, loginAt, (previous, next) -> next.isAfter(previous) ? next : previous);
+    }
+
+    /**
+     * 定时批量写入最后登录时间，停机前再写入一次
+     */
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${login.last-login.flush-interval-ms:5000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<Long, LocalDateTime> batch = new LinkedHashMap<>();
+        Iterator<Map.Entry<Long, LocalDateTime>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, LocalDateTime> entry = iterator.next();
+            // 只移除取出时的值，期间再次登录的新时间留到下次写入
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                batch.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> batchArgs = new ArrayList<>(batch.size());
+        batch.forEach((userId, loginAt) -> batchArgs.add(new Object[]{Timestamp.valueOf(loginAt), userId}));
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_SQL, batchArgs);
+            flushed.addAndGet(batch.size());
+        } catch (Exception e) {
+            // 写入失败时放回，除非期间已有更新的登录时间
+            failedFlushes.incrementAndGet();
+            batch.forEach(this::merge);
+            logger.error("最后登录时间写入失败，{} 个用户将在下次重试: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("recorded", recorded.get());
+        stats.put("pending", pending.size());
+        stats.put("flushed", flushed.get());
+        stats.put("failedFlushes", failedFlushes.get());
+        return stats;
+    }
+}
@@ -0,0 +1,119 @@
+package org.example.startup.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.startup.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 登录验证线程池
+ * BCrypt 校验密码刻意消耗大量CPU，放在Tomcat请求线程上执行时，集中登录会占满请求线程，
+ * 拖慢商品和购物车请求。登录改由按CPU核数设定的专用线程池执行，队列有界，
+ * 队列满时立即拒绝（返回503），不排队等待。
+ */
+@Service
+public class LoginService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoginService.class);
+
+    @Autowired
+    private UserService userService;
+
+    // 登录线程数，0表示CPU核数
+    @Value("${login.threads:0}")
+    private int threads;
+
+    // 等待验证的登录请求数超过该值时拒绝
+    @Value("${login.queue-capacity:64}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    // 统计信息
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger seq = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "login-" + seq.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        logger.info("登录线程池已启动，线程数: {}，队列容量: {}", poolSize, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 提交登录验证
+     * @return 验证成功时为用户，用户名或密码错误时为null
+     * @throws LoginBusyException 登录队列已满
+     */
+    public CompletableFuture<User> login(String username, String password) {
+        try {
+            CompletableFuture<User> future = CompletableFuture.supplyAsync(
+                    () -> userService.login(username, password), executor);
+            submitted.incrementAndGet();
+            return future.whenComplete((user, error) -> {
+                if (user != null) {
+                    succeeded.incrementAndGet();
+                } else {
+                    failed.incrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw new LoginBusyException("登录人数过多，请稍后重试");
+        }
+    }
+
+    /**
+     * 获取登录线程池统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("threads", executor.getPoolSize());
+        stats.put("active", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("submitted", submitted.get());
+        stats.put("rejected", rejected.get());
+        stats.put("succeeded", succeeded.get());
+        stats.put("failed", failed.get());
+        return stats;
+    }
+
+    /**
+     * 登录队列已满
+     */
+    public static class LoginBusyException extends RuntimeException {
+        public LoginBusyException(String message) {
+            super(message);
+        }
+    }
+}
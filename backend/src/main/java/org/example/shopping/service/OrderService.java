@@ -0,0 +1,86 @@
+package org.example.startup.service;
+
+import org.example.startup.dto.CursorPage;
+import org.example.startup.dto.OrderDto;
+import org.example.startup.model.CartItem;
+import org.example.startup.model.Order;
+import org.example.startup.model.OrderLine;
+import org.example.startup.repository.OrderLineRepository;
+import org.example.startup.repository.OrderRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Service
+@Transactional
+public class OrderService {
+    
+    private static final int MAX_PAGE_SIZE = 100;
+    
+    @Autowired
+    private OrderRepository orderRepository;
+    
+    @Autowired
+    private OrderLineRepository orderLineRepository;
+    
+    /**
+     * 根据购物车创建已支付订单，需在结账事务内调用
+     * 订单和明细的ID按号段预分配，明细由Hibernate合并为JDBC批量插入并立即刷新到数据库
+     */
+    public Order createOrder(Long userId, List<CartItem> cartItems, BigDecimal totalAmount) {
+        int totalQuantity = cartItems.stream().mapToInt(CartItem::getQuantity).sum();
+        Order order = orderRepository.save(
+                new Order(userId, totalAmount, cartItems.size(), totalQuantity, Order.STATUS_PAID));
+        
+        List<OrderLine> lines = new ArrayList<>(cartItems.size());
+        for (CartItem item : cartItems) {
+            lines.add(new OrderLine(order.getId(), item.getProductId(), item.getProduct().getName(),
+                    item.getProduct().getPrice(), item.getQuantity()));
+        }
+        orderLineRepository.saveAll(lines);
+        // 立即刷新，插入失败在此抛出并使结账事务回滚（由回滚回调归还库存），而不是推迟到提交阶段
+        orderLineRepository.flush();
+        return order;
+    }
+    
+    /**
+     * 键集分页查询用户订单，按ID倒序
+     * @param cursor 上一页返回的nextCursor，为null时查询第一页
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<OrderDto> getOrders(Long userId, Long cursor, int size) {
+        int pageSize = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+        // 多取一条用于判断是否还有下一页
+        PageRequest limit = PageRequest.of(0, pageSize + 1);
+        List<Order> orders = cursor == null
+                ? orderRepository.findLatestByUserId(userId, limit)
+                : orderRepository.findByUserIdBefore(userId, cursor, limit);
+        
+        boolean hasMore = orders.size() > pageSize;
+        if (hasMore) {
+            orders = orders.subList(0, pageSize);
+        }
+        if (orders.isEmpty()) {
+            return new CursorPage<>(Collections.emptyList(), null, false, pageSize);
+        }
+        
+        // 一次查询取回本页所有订单的明细
+        List<Long> orderIds = orders.stream().map(Order::getId).collect(Collectors.toList());
+        Map<Long, List<OrderLine>> linesByOrder = orderLineRepository.findByOrderIdInOrderByIdAsc(orderIds).stream()
+                .collect(Collectors.groupingBy(OrderLine::getOrderId));
+        
+        List<OrderDto> content = orders.stream()
+                .map(order -> new OrderDto(order, linesByOrder.getOrDefault(order.getId(), Collections.emptyList())))
+                .collect(Collectors.toList());
+        String nextCursor = hasMore ? String.valueOf(orders.get(orders.size() - 1).getId()) : null;
+        return new CursorPage<>(content, nextCursor, hasMore, pageSize);
+    }
+}
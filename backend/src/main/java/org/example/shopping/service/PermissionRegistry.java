@@ -0,0 +1,148 @@
+package org.example.startup.service;
+
+import org.example.startup.model.Permission;
+import org.example.startup.repository.PermissionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 权限位注册表
+ * 每个权限以主键减一作为固定的位序号（主键自增且不复用，各节点一致），
+ * 用户的有效权限编码为位图写入JWT，代替逗号拼接的权限名称；鉴权时按位序号O(1)判断。
+ * 名称映射在首次使用时加载，遇到未知的权限名或位序号（运行期间新增的权限）时重新加载一次。
+ */
+@Service
+public class PermissionRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(PermissionRegistry.class);
+
+    // 两次重新加载的最小间隔，避免未知名称反复查询数据库
+    private static final long MIN_RELOAD_INTERVAL_MS = 10_000;
+
+    @Autowired
+    private PermissionRepository permissionRepository;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * 权限的位序号
+     */
+    public static int bitOf(Permission permission) {
+        return (int) (permission.getId() - 1);
+    }
+
+    /**
+     * 按权限名称查询位序号，不存在时返回-1
+     */
+    public int bitOf(String name) {
+        Integer bit = snapshot().bits.get(name);
+        if (bit == null) {
+            bit = reload().bits.get(name);
+        }
+        return bit != null ? bit : -1;
+    }
+
+    /**
+     * 将权限集合编码为位图字符串（URL安全的Base64）
+     */
+    public String encode(Collection<Permission> permissions) {
+        BitSet bits = new BitSet();
+        for (Permission permission : permissions) {
+            if (permission.getId() != null) {
+                bits.set(bitOf(permission));
+            }
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bits.toByteArray());
+    }
+
+    /**
+     * 解码位图字符串
+     */
+    public BitSet decode(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return new BitSet();
+        }
+        return BitSet.valueOf(Base64.getUrlDecoder().decode(encoded));
+    }
+
+    /**
+     * 将权限名称转换为位图，兼容旧版令牌中逗号拼接的权限
+     */
+    public BitSet fromNames(Collection<String> names) {
+        BitSet bits = new BitSet();
+        for (String name : names) {
+            int bit = bitOf(name);
+            if (bit >= 0) {
+                bits.set(bit);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * 位图对应的权限名称
+     */
+    public List<String> namesOf(BitSet bits) {
+        Snapshot current = snapshot();
+        if (bits.length() > current.names.length) {
+            current = reload();
+        }
+        List<String> names = new ArrayList<>(bits.cardinality());
+        for (int bit = bits.nextSetBit(0); bit >= 0; bit = bits.nextSetBit(bit + 1)) {
+            if (bit < current.names.length && current.names[bit] != null) {
+                names.add(current.names[bit]);
+            }
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        return current != null ? current : reload();
+    }
+
+    private synchronized Snapshot reload() {
+        Snapshot current = snapshot;
+        if (current != null && System.currentTimeMillis() - current.loadedAt < MIN_RELOAD_INTERVAL_MS) {
+            return current;
+        }
+        List<Permission> permissions = permissionRepository.findAll();
+        Map<String, Integer> bits = new HashMap<>();
+        int size = 0;
+        for (Permission permission : permissions) {
+            size = Math.max(size, bitOf(permission) + 1);
+        }
+        String[] names = new String[size];
+        for (Permission permission : permissions) {
+            int bit = bitOf(permission);
+            bits.put(permission.getName(), bit);
+            names[bit] = permission.getName();
+        }
+        Snapshot loaded = new Snapshot(bits, names);
+        snapshot = loaded;
+        logger.info("权限位注册表加载完成，共 {} 个权限", permissions.size());
+        return loaded;
+    }
+
+    private static class Snapshot {
+        private final Map<String, Integer> bits;
+        private final String[] names;
+        private final long loadedAt = System.currentTimeMillis();
+
+        Snapshot(Map<String, Integer> bits, String[] names) {
+            this.bits = bits;
+            this.names = names;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package org.example.startup.service;
+
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 商品人气实时计分
+ * 浏览、加购、下单事件只在内存中按商品累加（LongAdder，无锁且不阻塞请求线程），
+ * 定时将合并后的增量批量写入 products.popularity 并同步调整Redis人气排序索引。
+ * 人气按固定周期乘以衰减系数，近期的热度权重高于历史热度；衰减在集群内每周期只执行一次。
+ * 人气排序的列表按排序索引取商品ID，落库时只调整索引分数，不清除商品缓存；
+ * 只有靠前名次的顺序改变或执行衰减时才递增目录快照版本，避免浏览量持续变化时快照和ETag频繁失效。
+ * 衰减后清除全部商品的缓存，缓存和检索索引中的人气数值至多滞后一个衰减周期。
+ */
+@Service
+public class PopularityService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PopularityService.class);
+
+    private static final String DECAY_LEASE_KEY = "popularity:decay:lease";
+
+    // 显式保留 updated_at，避免人气变化触发 ON UPDATE 时间戳导致静态页重新生成
+    private static final String INCREMENT_SQL =
+            "UPDATE products SET popularity = COALESCE(popularity, 0) + ?, updated_at = updated_at WHERE id = ?";
+    private static final String DECAY_SQL =
+            "UPDATE products SET popularity = FLOOR(popularity * ?), updated_at = updated_at WHERE popularity > 0";
+    private static final String SELECT_POPULARITY_SQL = "SELECT id, popularity FROM products";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ProductIndexService productIndexService;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private CatalogSnapshotService catalogSnapshotService;
+
+    @Value("${popularity.weight.view:1}")
+    private long viewWeight;
+
+    @Value("${popularity.weight.add-to-cart:3}")
+    private long addToCartWeight;
+
+    // 下单按购买数量计分
+    @Value("${popularity.weight.checkout:5}")
+    private long checkoutWeight;
+
+    // 每个衰减周期人气乘以该系数
+    @Value("${popularity.decay.factor:0.9}")
+    private double decayFactor;
+
+    @Value("${popularity.decay.interval-ms:3600000}")
+    private long decayIntervalMillis;
+
+    // 前若干名的顺序改变时才使目录快照失效，应覆盖快照缓存的人气排序页
+    @Value("${popularity.snapshot.rank-window:100}")
+    private int snapshotRankWindow;
+
+    // 商品ID -> 未落库的人气增量
+    private final Map<Long, LongAdder> pending = new ConcurrentHashMap<>();
+
+    // 统计信息
+    private final LongAdder recordedEvents = new LongAdder();
+    private final AtomicLong flushedProducts = new AtomicLong();
+    private final AtomicLong flushedPoints = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong decays = new AtomicLong();
+    private final AtomicLong rankChanges = new AtomicLong();
+    private volatile long lastFlushAt;
+    private volatile long lastDecayAt;
+
+    /**
+     * 记录商品浏览
+     */
+    public void recordView(Long productId) {
+        record(productId, viewWeight);
+    }
+
+    /**
+     * 记录加入购物车
+     */
+    public void recordAddToCart(Long productId) {
+        record(productId, addToCartWeight);
+    }
+
+    /**
+     * 记录下单
+     */
+    public void recordCheckout(Long productId, int quantity) {
+        record(productId, checkoutWeight * Math.max(quantity, 1));
+    }
+
+    private void record(Long productId, long points) {
+        if (productId == null || points <= 0) {
+            return;
+        }
+        pending.computeIfAbsent(productId, id -> new LongAdder()).add(points);
+        recordedEvents.increment();
+    }
+
+    /**
+     * 定时将人气增量批量落库并调整排序索引
+     */
+    @Scheduled(fixedDelayString = "${popularity.flush-interval-ms:5000}")
+    public void flush() {
+        Map<Long, Long> deltas = new HashMap<>();
+        for (Map.Entry<Long, LongAdder> entry : pending.entrySet()) {
+            // sumThenReset 逐个单元取值清零，并发的累加要么计入本次，要么留到下次
+            long delta = entry.getValue().sumThenReset();
+            if (delta != 0) {
+                deltas.put(entry.getKey(), delta);
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> batchArgs = new ArrayList<>(deltas.size());
+        long points = 0;
+        for (Map.Entry<Long, Long> entry : deltas.entrySet()) {
+            batchArgs.add(new Object[]{entry.getValue(), entry.getKey()});
+            points += entry.getValue();
+        }
+        try {
+            jdbcTemplate.batchUpdate(INCREMENT_SQL, batchArgs);
+        } catch (Exception e) {
+            // 落库失败时把增量放回，下次重试
+            failedFlushes.incrementAndGet();
+            deltas.forEach((productId, delta) -> pending.computeIfAbsent(productId, id -> new LongAdder()).add(delta));
+            logger.error("人气增量落库失败，{} 个商品将在下次重试: {}", deltas.size(), e.getMessage());
+            return;
+        }
+
+        try {
+            if (productIndexService.incrementPopularity(deltas, snapshotRankWindow)) {
+                catalogSnapshotService.bumpVersion();
+                rankChanges.incrementAndGet();
+            }
+        } catch (Exception e) {
+            // 排序索引在下次衰减重建时与数据库对齐
+            logger.warn("调整人气排序索引失败: {}", e.getMessage());
+        }
+        flushedProducts.addAndGet(deltas.size());
+        flushedPoints.addAndGet(points);
+        lastFlushAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 定时衰减人气并按数据库重建人气排序索引
+     * 通过带过期时间的Redis键抢占本周期的衰减权，集群内只有一个节点执行
+     */
+    @Scheduled(fixedDelayString = "${popularity.decay.check-interval-ms:60000}")
+    public void decay() {
+        if (decayFactor <= 0 || decayFactor >= 1) {
+            return;
+        }
+        try {
+            boolean acquired = redissonClient.<String>getBucket(DECAY_LEASE_KEY, StringCodec.INSTANCE)
+                    .setIfAbsent(String.valueOf(System.currentTimeMillis()), Duration.ofMillis(decayIntervalMillis));
+            if (!acquired) {
+                return;
+            }
+        } catch (Exception e) {
+            logger.warn("获取人气衰减权失败，跳过本次衰减: {}", e.getMessage());
+            return;
+        }
+
+        // 先落库未提交的增量，使衰减作用在最新的人气上
+        flush();
+        int updated = jdbcTemplate.update(DECAY_SQL, decayFactor);
+
+        Map<Long, Integer> popularity = new HashMap<>();
+        jdbcTemplate.query(SELECT_POPULARITY_SQL,
+                rs -> { popularity.put(rs.getLong(1), rs.getInt(2)); });
+        productIndexService.rebuildPopularity(popularity);
+        try {
+            productCache.invalidateAll(popularity.keySet());
+            catalogSnapshotService.bumpVersion();
+        } catch (Exception e) {
+            logger.warn("衰减后清除商品缓存失败，缓存将在过期后更新: {}", e.getMessage());
+        }
+
+        decays.incrementAndGet();
+        lastDecayAt = System.currentTimeMillis();
+        logger.info("人气衰减完成，系数 {}，更新 {} 个商品", decayFactor, updated);
+    }
+
+    /**
+     * 获取人气计分统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("recordedEvents", recordedEvents.sum());
+        stats.put("trackedProducts", pending.size());
+        stats.put("flushedProducts", flushedProducts.get());
+        stats.put("flushedPoints", flushedPoints.get());
+        stats.put("failedFlushes", failedFlushes.get());
+        stats.put("rankChanges", rankChanges.get());
+        stats.put("decays", decays.get());
+        stats.put("lastFlushAt", lastFlushAt);
+        stats.put("lastDecayAt", lastDecayAt);
+        return stats;
+    }
+}
@@ -0,0 +1,252 @@
+package org.example.startup.service;
+
+import jakarta.annotation.PostConstruct;
+import org.example.startup.dto.PageResponse;
+import org.example.startup.dto.ProductSummary;
+import org.example.startup.model.Product;
+import org.example.startup.repository.ProductRepository;
+import org.example.startup.util.LocalCache;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBucket;
+import org.redisson.api.RTopic;
+import org.redisson.api.RTopicAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 商品两级缓存
+ * L1 为进程内有界缓存（容量+TTL淘汰），L2 为Redis中的 product:{id}，均未命中时读数据库并回填。
+ * 商品保存/删除时清除两级缓存，并通过Redis发布订阅通知其他节点清除各自的L1。
+ * 分页结果只缓存在L1，任一商品变更时整体失效。
+ * 缓存的商品对象在各调用方之间共享，调用方不得修改；需要修改时通过数据库重新读取。
+ */
+@Component
+public class ProductCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductCache.class);
+
+    private static final String PRODUCT_PREFIX = "product:";
+    public static final String INVALIDATE_CHANNEL = "product:invalidate";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Value("${product.cache.l1.max-size:10000}")
+    private int l1MaxSize;
+
+    @Value("${product.cache.l1.ttl-ms:60000}")
+    private long l1TtlMillis;
+
+    @Value("${product.cache.l2.ttl-seconds:3600}")
+    private long l2TtlSeconds;
+
+    @Value("${product.cache.page.max-size:500}")
+    private int pageMaxSize;
+
+    @Value("${product.cache.page.ttl-ms:30000}")
+    private long pageTtlMillis;
+
+    private LocalCache<Long, Product> productCache;
+    private LocalCache<String, PageResponse<ProductSummary>> pageCache;
+
+    // L2统计
+    private final LongAdder l2Hits = new LongAdder();
+    private final LongAdder l2Misses = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        productCache = new LocalCache<>(l1MaxSize, l1TtlMillis);
+        pageCache = new LocalCache<>(pageMaxSize, pageTtlMillis);
+        try {
+            RTopic topic = redissonClient.getTopic(INVALIDATE_CHANNEL, StringCodec.INSTANCE);
+            topic.addListener(String.class, (channel, message) -> onInvalidate(message));
+        } catch (Exception e) {
+            logger.warn("订阅商品缓存失效事件失败，其他节点的修改只能依赖TTL生效: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 读取商品，依次查询L1、L2、数据库，不存在返回null
+     */
+    public Product get(Long productId) {
+        Product product = productCache.get(productId);
+        if (product != null) {
+            return product;
+        }
+
+        try {
+            product = getBucket(productId).get();
+        } catch (Exception e) {
+            logger.warn("读取商品L2缓存失败, productId: {}, 错误: {}", productId, e.getMessage());
+        }
+        if (product != null) {
+            l2Hits.increment();
+            productCache.put(productId, product);
+            return product;
+        }
+        l2Misses.increment();
+
+        product = productRepository.findById(productId).orElse(null);
+        if (product != null) {
+            fill(product);
+        }
+        return product;
+    }
+
+    /**
+     * 批量读取商品，L2和数据库各只访问一次，不存在的商品不出现在结果中
+     */
+    public Map<Long, Product> getAll(Collection<Long> productIds) {
+        Map<Long, Product> result = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long productId : productIds) {
+            Product product = productCache.get(productId);
+            if (product != null) {
+                result.put(productId, product);
+            } else {
+                missing.add(productId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        try {
+            String[] keys = missing.stream().map(this::productKey).toArray(String[]::new);
+            Map<String, Product> cached = redissonClient.getBuckets().get(keys);
+            for (Product product : cached.values()) {
+                productCache.put(product.getId(), product);
+                result.put(product.getId(), product);
+            }
+            l2Hits.add(cached.size());
+            missing.removeIf(result::containsKey);
+        } catch (Exception e) {
+            logger.warn("批量读取商品L2缓存失败: {}", e.getMessage());
+        }
+        l2Misses.add(missing.size());
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        for (Product product : productRepository.findAllById(missing)) {
+            fill(product);
+            result.put(product.getId(), product);
+        }
+        return result;
+    }
+
+    /**
+     * 读取分页结果，未命中时通过loader加载并缓存
+     */
+    public PageResponse<ProductSummary> getPage(String pageKey, Supplier<PageResponse<ProductSummary>> loader) {
+        PageResponse<ProductSummary> page = pageCache.get(pageKey);
+        if (page == null) {
+            page = loader.get();
+            pageCache.put(pageKey, page);
+        }
+        return page;
+    }
+
+    /**
+     * 清除商品的两级缓存和所有分页缓存，并通知其他节点
+     */
+    public void invalidate(Long productId) {
+        productCache.invalidate(productId);
+        pageCache.invalidateAll();
+        try {
+            getBucket(productId).delete();
+            redissonClient.getTopic(INVALIDATE_CHANNEL, StringCodec.INSTANCE).publish(String.valueOf(productId));
+        } catch (Exception e) {
+            logger.warn("清除商品缓存失败, productId: {}, 错误: {}", productId, e.getMessage());
+        }
+    }
+
+    /**
+     * 批量清除商品缓存并通知其他节点，L2删除和事件发布合并为一次Redis往返
+     */
+    public void invalidateAll(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        for (Long productId : productIds) {
+            productCache.invalidate(productId);
+        }
+        pageCache.invalidateAll();
+        try {
+            RBatch batch = redissonClient.createBatch();
+            batch.getKeys().deleteAsync(productIds.stream().map(this::productKey).toArray(String[]::new));
+            RTopicAsync topic = batch.getTopic(INVALIDATE_CHANNEL, StringCodec.INSTANCE);
+            for (Long productId : productIds) {
+                topic.publishAsync(String.valueOf(productId));
+            }
+            batch.execute();
+        } catch (Exception e) {
+            logger.warn("批量清除商品缓存失败，{} 个商品, 错误: {}", productIds.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * 获取两级缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        long hits = l2Hits.sum();
+        long misses = l2Misses.sum();
+        Map<String, Object> l2 = new LinkedHashMap<>();
+        l2.put("hits", hits);
+        l2.put("misses", misses);
+        l2.put("hitRate", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("l1", productCache.getStats());
+        stats.put("l2", l2);
+        stats.put("pages", pageCache.getStats());
+        return stats;
+    }
+
+    /**
+     * 处理其他节点发布的失效事件
+     */
+    void onInvalidate(String message) {
+        try {
+            productCache.invalidate(Long.valueOf(message));
+            pageCache.invalidateAll();
+        } catch (NumberFormatException e) {
+            logger.warn("无法解析商品缓存失效事件: {}", message);
+        }
+    }
+
+    private void fill(Product product) {
+        productCache.put(product.getId(), product);
+        try {
+            getBucket(product.getId()).set(product, Duration.ofSeconds(l2TtlSeconds));
+        } catch (Exception e) {
+            logger.warn("写入商品L2缓存失败, productId: {}, 错误: {}", product.getId(), e.getMessage());
+        }
+    }
+
+    private RBucket<Product> getBucket(Long productId) {
+        return redissonClient.getBucket(productKey(productId));
+    }
+
+    private String productKey(Long productId) {
+        return PRODUCT_PREFIX + productId;
+    }
+}
@@ -0,0 +1,128 @@
+package org.example.startup.service;
+
+import jakarta.annotation.PostConstruct;
+import org.example.startup.model.Product;
+import org.example.startup.repository.ProductRepository;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 商品变更重新加载
+ * 订阅 product:invalidate 频道（包括本节点发布的），消息处理只记下商品ID，不在Redisson的订阅线程上访问数据库；
+ * 定时将期间累积的商品ID去重后按批 findAllById 读取，更新检索索引和分面计数，已删除的商品从两者中移除。
+ */
+@Service
+public class ProductChangeReloader {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductChangeReloader.class);
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private ProductFacetService productFacetService;
+
+    // 每次 findAllById 读取的最大商品数
+    @Value("${product.change.reload-batch-size:500}")
+    private int batchSize;
+
+    // 待重新加载的商品ID
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+
+    // 统计信息
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong reloaded = new AtomicLong();
+    private final AtomicLong failedReloads = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        try {
+            RTopic topic = redissonClient.getTopic(ProductCache.INVALIDATE_CHANNEL, StringCodec.INSTANCE);
+            topic.addListener(String.class, (channel, message) -> onProductChanged(message));
+        } catch (Exception e) {
+            logger.warn("订阅商品变更事件失败，检索索引和分面计数只反映本节点的修改: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 定时重新加载变更的商品
+     */
+    @Scheduled(fixedDelayString = "${product.change.reload-interval-ms:500}")
+    public void reload() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Long> batch = new ArrayList<>();
+        Iterator<Long> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            batch.add(iterator.next());
+            iterator.remove();
+        }
+
+        for (int from = 0; from < batch.size(); from += batchSize) {
+            List<Long> productIds = batch.subList(from, Math.min(from + batchSize, batch.size()));
+            try {
+                Set<Long> missing = new HashSet<>(productIds);
+                for (Product product : productRepository.findAllById(productIds)) {
+                    missing.remove(product.getId());
+                    productSearchIndex.index(product);
+                    productFacetService.index(product);
+                }
+                for (Long productId : missing) {
+                    productSearchIndex.remove(productId);
+                    productFacetService.remove(productId);
+                }
+                reloaded.addAndGet(productIds.size());
+            } catch (Exception e) {
+                // 放回下次重试
+                failedReloads.incrementAndGet();
+                pending.addAll(productIds);
+                logger.warn("重新加载变更商品失败，{} 个商品将在下次重试: {}", productIds.size(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("received", received.get());
+        stats.put("pending", pending.size());
+        stats.put("reloaded", reloaded.get());
+        stats.put("failedReloads", failedReloads.get());
+        return stats;
+    }
+
+    void onProductChanged(String message) {
+        try {
+            pending.add(Long.valueOf(message));
+            received.incrementAndGet();
+        } catch (NumberFormatException e) {
+            logger.warn("无法解析商品变更事件: {}", message);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.example.startup.service;
+
+import jakarta.annotation.PostConstruct;
+import org.example.startup.model.Product;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 商品分面计数
+ * 在内存中按分类、价格区间、是否有货维护商品数量，商品保存/删除和库存售罄/补货时增量调整，
+ * 查询分面时直接读取计数，不再对商品表执行 GROUP BY。
+ * 商品变更经 product:invalidate 频道（由 ProductChangeReloader 批量重新读取）、库存变化经 stock:events 频道同步到所有节点。
+ */
+@Service
+public class ProductFacetService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductFacetService.class);
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    // 价格区间上界（元），如 100,500 划分为 0-100、100-500、500+
+    @Value("${product.facet.price-bands:100,500,1000,5000}")
+    private BigDecimal[] priceBounds;
+
+    private List<String> bandLabels;
+
+    // 商品ID -> 当前计入的分面值
+    private final Map<Long, FacetEntry> entries = new HashMap<>();
+    // 全部商品的计数，以及每个分类内的计数
+    private FacetCounts total;
+    private final Map<String, FacetCounts> byCategory = new HashMap<>();
+
+    @PostConstruct
+    public void init() {
+        Arrays.sort(priceBounds);
+        List<String> labels = new ArrayList<>(priceBounds.length + 1);
+        BigDecimal lower = BigDecimal.ZERO;
+        for (BigDecimal upper : priceBounds) {
+            labels.add(lower.toPlainString() + "-" + upper.toPlainString());
+            lower = upper;
+        }
+        labels.add(lower.toPlainString() + "+");
+        bandLabels = labels;
+        total = new FacetCounts(bandLabels.size());
+
+        try {
+            RTopic stockTopic = redissonClient.getTopic(StockNearCache.STOCK_EVENT_CHANNEL, StringCodec.INSTANCE);
+            stockTopic.addListener(String.class, (channel, message) -> onStockEvent(message));
+        } catch (Exception e) {
+            logger.warn("订阅商品变更事件失败，分面计数只反映本节点的修改: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 按全部商品重建计数
+     */
+    public synchronized void rebuild(Collection<Product> products) {
+        entries.clear();
+        byCategory.clear();
+        total = new FacetCounts(bandLabels.size());
+        for (Product product : products) {
+            if (product.getId() != null) {
+                apply(product.getId(), toEntry(product));
+            }
+        }
+        logger.info("商品分面计数构建完成，共 {} 个商品，{} 个分类", entries.size(), byCategory.size());
+    }
+
+    /**
+     * 写入或更新商品的分面值
+     */
+    public synchronized void index(Product product) {
+        if (product.getId() != null) {
+            apply(product.getId(), toEntry(product));
+        }
+    }
+
+    /**
+     * 移除商品
+     */
+    public synchronized void remove(Long productId) {
+        apply(productId, null);
+    }
+
+    /**
+     * 更新商品的有货状态
+     */
+    public synchronized void setInStock(Long productId, boolean inStock) {
+        FacetEntry current = entries.get(productId);
+        if (current != null && current.inStock != inStock) {
+            apply(productId, new FacetEntry(current.category, current.band, inStock));
+        }
+    }
+
+    /**
+     * 全部分类，按商品数降序
+     */
+    public synchronized List<String> getCategories() {
+        List<Map.Entry<String, FacetCounts>> sorted = new ArrayList<>(byCategory.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue().total, a.getValue().total));
+        List<String> categories = new ArrayList<>(sorted.size());
+        for (Map.Entry<String, FacetCounts> entry : sorted) {
+            categories.add(entry.getKey());
+        }
+        return categories;
+    }
+
+    /**
+     * 分类下的商品数，category为空时返回全部商品数
+     */
+    public synchronized long count(String category) {
+        FacetCounts counts = category == null ? total : byCategory.get(category);
+        return counts != null ? counts.total : 0;
+    }
+
+    /**
+     * 获取分面计数
+     * @param category 指定分类时价格区间和有货计数只统计该分类
+     */
+    public synchronized Map<String, Object> getFacets(String category) {
+        FacetCounts counts = category == null ? total : byCategory.get(category);
+        if (counts == null) {
+            counts = new FacetCounts(bandLabels.size());
+        }
+
+        Map<String, Long> categories = new LinkedHashMap<>();
+        for (String name : getCategories()) {
+            categories.put(name, byCategory.get(name).total);
+        }
+        Map<String, Long> priceBands = new LinkedHashMap<>();
+        for (int i = 0; i < bandLabels.size(); i++) {
+            priceBands.put(bandLabels.get(i), counts.bands[i]);
+        }
+        Map<String, Long> stock = new LinkedHashMap<>();
+        stock.put("inStock", counts.inStock);
+        stock.put("outOfStock", counts.total - counts.inStock);
+
+        Map<String, Object> facets = new LinkedHashMap<>();
+        facets.put("total", counts.total);
+        facets.put("categories", categories);
+        facets.put("priceBands", priceBands);
+        facets.put("stock", stock);
+        return facets;
+    }
+
+    /**
+     * 处理库存售罄/补货事件
+     */
+    void onStockEvent(String message) {
+        try {
+            if (message.startsWith(StockNearCache.SOLD_OUT_EVENT)) {
+                setInStock(Long.valueOf(message.substring(StockNearCache.SOLD_OUT_EVENT.length())), false);
+            } else if (message.startsWith(StockNearCache.AVAILABLE_EVENT)) {
+                setInStock(Long.valueOf(message.substring(StockNearCache.AVAILABLE_EVENT.length())), true);
+            }
+        } catch (NumberFormatException e) {
+            logger.warn("无法解析库存事件: {}", message);
+        }
+    }
+
+    /**
+     * 从计数中减去商品原有的分面值并加上新值，next为null表示移除
+     */
+    private void apply(Long productId, FacetEntry next) {
+        FacetEntry previous = next != null ? entries.put(productId, next) : entries.remove(productId);
+        if (previous != null) {
+            adjust(previous, -1);
+        }
+        if (next != null) {
+            adjust(next, 1);
+        }
+    }
+
+    private void adjust(FacetEntry entry, int delta) {
+        total.add(entry, delta);
+        if (entry.category == null) {
+            return;
+        }
+        FacetCounts counts = byCategory.computeIfAbsent(entry.category, key -> new FacetCounts(bandLabels.size()));
+        counts.add(entry, delta);
+        if (counts.total == 0) {
+            byCategory.remove(entry.category);
+        }
+    }
+
+    private FacetEntry toEntry(Product product) {
+        String category = product.getCategory();
+        if (category != null && category.isBlank()) {
+            category = null;
+        }
+        return new FacetEntry(category, bandOf(product.getPrice()),
+                product.getStock() != null && product.getStock() > 0);
+    }
+
+    private int bandOf(BigDecimal price) {
+        if (price == null) {
+            return 0;
+        }
+        int band = 0;
+        while (band < priceBounds.length && price.compareTo(priceBounds[band]) >= 0) {
+            band++;
+        }
+        return band;
+    }
+
+    private static class FacetEntry {
+        private final String category;
+        private final int band;
+        private final boolean inStock;
+
+        FacetEntry(String category, int band, boolean inStock) {
+            this.category = category;
+            this.band = band;
+            this.inStock = inStock;
+        }
+    }
+
+    private static class FacetCounts {
+        private long total;
+        private long inStock;
+        private final long[] bands;
+
+        FacetCounts(int bandCount) {
+            this.bands = new long[bandCount];
+        }
+
+        void add(FacetEntry entry, int delta) {
+            total += delta;
+            bands[entry.band] += delta;
+            if (entry.inStock) {
+                inStock += delta;
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.example.startup.service;
+
+import org.example.startup.dto.PageResponse;
+import org.example.startup.dto.ProductSummary;
+import org.example.startup.model.Product;
+import org.example.startup.store.CartTotals;
+import org.redisson.api.BatchResult;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RScoredSortedSetAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 商品排序索引
+ * 在Redis有序集合中维护按人气、按价格排序的商品ID，商品保存/删除时同步更新。
+ * 列表查询只需一次ZRANGE+ZCARD再从商品缓存批量取详情，耗时与页码无关。
+ */
+@Service
+public class ProductIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductIndexService.class);
+
+    public static final String BY_POPULARITY_KEY = "products:by_popularity";
+    public static final String BY_PRICE_KEY = "products:by_price";
+
+    private static final String REBUILD_SUFFIX = ":rebuild";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private ProductCache productCache;
+
+    /**
+     * 写入或更新商品在各排序索引中的位置
+     */
+    public void index(Product product) {
+        if (product.getId() == null) {
+            return;
+        }
+        RBatch batch = redissonClient.createBatch();
+        addToBatch(batch, BY_POPULARITY_KEY, BY_PRICE_KEY, product);
+        batch.execute();
+    }
+
+    /**
+     * 从所有排序索引中移除商品
+     */
+    public void remove(Long productId) {
+        RBatch batch = redissonClient.createBatch();
+        String member = String.valueOf(productId);
+        batch.<String>getScoredSortedSet(BY_POPULARITY_KEY, StringCodec.INSTANCE).removeAsync(member);
+        batch.<String>getScoredSortedSet(BY_PRICE_KEY, StringCodec.INSTANCE).removeAsync(member);
+        batch.execute();
+    }
+
+    /**
+     * 按全部商品重建排序索引，先写入临时键再重命名替换，重建期间查询不受影响
+     */
+    public void rebuild(Collection<Product> products) {
+        String popularityTmp = BY_POPULARITY_KEY + REBUILD_SUFFIX;
+        String priceTmp = BY_PRICE_KEY + REBUILD_SUFFIX;
+
+        RBatch batch = redissonClient.createBatch();
+        batch.getKeys().deleteAsync(popularityTmp, priceTmp);
+        for (Product product : products) {
+            if (product.getId() != null) {
+                addToBatch(batch, popularityTmp, priceTmp, product);
+            }
+        }
+        batch.execute();
+
+        // 空目录时临时键不存在，直接删除正式索引
+        RBatch swap = redissonClient.createBatch();
+        if (products.isEmpty()) {
+            swap.getKeys().deleteAsync(BY_POPULARITY_KEY, BY_PRICE_KEY);
+        } else {
+            swap.getKeys().renameAsync(popularityTmp, BY_POPULARITY_KEY);
+            swap.getKeys().renameAsync(priceTmp, BY_PRICE_KEY);
+        }
+        swap.execute();
+        logger.info("商品排序索引重建完成，共 {} 个商品", products.size());
+    }
+
+    /**
+     * 按增量调整人气排序索引中的分数
+     * 同一批次内读取各商品调整前后的名次：其他商品的相对顺序不变，
+     * 只有被调整的商品调整前或调整后落在前 rankWindow 名内且名次变化时，前 rankWindow 名的顺序才会改变
+     * @param rankWindow 关注的名次范围
+     * @return 前 rankWindow 名的顺序是否改变
+     */
+    public boolean incrementPopularity(Map<Long, Long> deltas, int rankWindow) {
+        RBatch batch = redissonClient.createBatch();
+        RScoredSortedSetAsync<String> index = batch.getScoredSortedSet(BY_POPULARITY_KEY, StringCodec.INSTANCE);
+        List<RFuture<Integer>> before = new ArrayList<>(deltas.size());
+        for (Long productId : deltas.keySet()) {
+            before.add(index.revRankAsync(String.valueOf(productId)));
+        }
+        for (Map.Entry<Long, Long> entry : deltas.entrySet()) {
+            index.addScoreAsync(String.valueOf(entry.getKey()), entry.getValue());
+        }
+        List<RFuture<Integer>> after = new ArrayList<>(deltas.size());
+        for (Long productId : deltas.keySet()) {
+            after.add(index.revRankAsync(String.valueOf(productId)));
+        }
+        batch.execute();
+
+        for (int i = 0; i < before.size(); i++) {
+            Integer oldRank = before.get(i).toCompletableFuture().join();
+            Integer newRank = after.get(i).toCompletableFuture().join();
+            if (Objects.equals(oldRank, newRank)) {
+                continue;
+            }
+            if ((oldRank != null && oldRank < rankWindow) || (newRank != null && newRank < rankWindow)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按数据库中的人气重建人气排序索引，同样先写临时键再重命名替换
+     */
+    public void rebuildPopularity(Map<Long, Integer> popularity) {
+        String popularityTmp = BY_POPULARITY_KEY + REBUILD_SUFFIX;
+        RBatch batch = redissonClient.createBatch();
+        batch.getKeys().deleteAsync(popularityTmp);
+        RScoredSortedSetAsync<String> index = batch.getScoredSortedSet(popularityTmp, StringCodec.INSTANCE);
+        for (Map.Entry<Long, Integer> entry : popularity.entrySet()) {
+            index.addAsync(entry.getValue() != null ? entry.getValue() : 0, String.valueOf(entry.getKey()));
+        }
+        if (popularity.isEmpty()) {
+            batch.getKeys().deleteAsync(BY_POPULARITY_KEY);
+        } else {
+            batch.getKeys().renameAsync(popularityTmp, BY_POPULARITY_KEY);
+        }
+        batch.execute();
+    }
+
+    /**
+     * 通过排序索引分页查询商品
+     * @param sort price 按价格升序，其他按人气降序
+     * @return 分页结果，索引不存在时返回null，由调用方回退到数据库查询
+     */
+    public PageResponse<ProductSummary> getPage(int page, int size, String sort) {
+        if (page < 0 || size <= 0) {
+            return null;
+        }
+        boolean byPrice = "price".equals(sort);
+        String key = byPrice ? BY_PRICE_KEY : BY_POPULARITY_KEY;
+        // 按long计算，大页码溢出为负数时ZRANGE会从末尾取数，返回错误的商品
+        long start = (long) page * size;
+        long end = start + size - 1;
+        boolean inRange = end <= Integer.MAX_VALUE;
+
+        RBatch batch = redissonClient.createBatch();
+        RScoredSortedSetAsync<String> index = batch.getScoredSortedSet(key, StringCodec.INSTANCE);
+        index.sizeAsync();
+        if (inRange) {
+            if (byPrice) {
+                index.valueRangeAsync((int) start, (int) end);
+            } else {
+                index.valueRangeReversedAsync((int) start, (int) end);
+            }
+        }
+        BatchResult<?> result = batch.execute();
+
+        int total = (Integer) result.getResponses().get(0);
+        if (total == 0) {
+            return null;
+        }
+        int totalPages = (total + size - 1) / size;
+        // 超出总数的页返回空页
+        if (!inRange || start >= total) {
+            return new PageResponse<>(Collections.emptyList(), totalPages, total, size, page);
+        }
+        @SuppressWarnings("unchecked")
+        Collection<String> ids = (Collection<String>) result.getResponses().get(1);
+
+        List<Long> productIds = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            productIds.add(Long.valueOf(id));
+        }
+        Map<Long, Product> products = productCache.getAll(productIds);
+        List<ProductSummary> content = new ArrayList<>(productIds.size());
+        for (Long productId : productIds) {
+            Product product = products.get(productId);
+            if (product != null) {
+                content.add(ProductSummary.from(product));
+            }
+        }
+
+        return new PageResponse<>(content, totalPages, total, size, page);
+    }
+
+    private void addToBatch(RBatch batch, String popularityKey, String priceKey, Product product) {
+        String member = String.valueOf(product.getId());
+        double popularity = product.getPopularity() != null ? product.getPopularity() : 0;
+        batch.<String>getScoredSortedSet(popularityKey, StringCodec.INSTANCE).addAsync(popularity, member);
+        batch.<String>getScoredSortedSet(priceKey, StringCodec.INSTANCE)
+                .addAsync(CartTotals.toMinorUnits(product.getPrice()), member);
+    }
+}
@@ -0,0 +1,325 @@
+package org.example.startup.service;
+
+import org.example.startup.dto.ProductSummary;
+import org.example.startup.model.Product;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 商品全文检索索引
+ * 在进程内维护商品名称和描述的倒排索引：英文和数字按单词切分，中日韩文字切分为单字和相邻二元组，
+ * 中英文混排的文本无需分词词典即可检索。启动时全量构建，商品保存/删除时增量更新，
+ * 其他节点的修改经 product:invalidate 频道通知后由 ProductChangeReloader 批量重新读取。
+ * 查询要求包含全部检索词，按词频（名称命中加权）和人气综合打分，用小顶堆取前K个。
+ */
+@Service
+public class ProductSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductSearchIndex.class);
+
+    // 名称中出现的词比描述中的权重更高
+    private static final int NAME_WEIGHT = 3;
+    private static final int DESCRIPTION_WEIGHT = 1;
+
+    // 人气得分权重，得分为 权重 * ln(1 + 人气)
+    @Value("${product.search.popularity-weight:1.0}")
+    private double popularityWeight;
+
+    // 单次查询最多返回的结果数（offset + size）
+    @Value("${product.search.max-results:1000}")
+    private int maxResults;
+
+    // 检索词 -> (商品ID -> 加权词频)
+    private final Map<String, Map<Long, Integer>> postings = new HashMap<>();
+    private final Map<Long, IndexedProduct> documents = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 按全部商品重建索引
+     */
+    public void rebuild(Collection<Product> products) {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documents.clear();
+            for (Product product : products) {
+                addDocument(product);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("商品检索索引构建完成，共 {} 个商品，{} 个检索词", products.size(), postings.size());
+    }
+
+    /**
+     * 写入或更新商品
+     */
+    public void index(Product product) {
+        if (product.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            removeDocument(product.getId());
+            addDocument(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 移除商品
+     */
+    public void remove(Long productId) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 检索商品
+     * @param query 检索文本
+     * @param offset 跳过的结果数
+     * @param limit 返回的结果数
+     * @return 命中总数和按得分降序排列的结果
+     */
+    public SearchResult search(String query, int offset, int limit) {
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(query, true)));
+        if (terms.isEmpty() || limit <= 0) {
+            return new SearchResult(Collections.emptyList(), 0);
+        }
+        int topK = Math.min(offset + limit, maxResults);
+
+        lock.readLock().lock();
+        try {
+            // 从最短的倒排表开始求交集，候选集合尽早缩小
+            List<Map<Long, Integer>> lists = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                Map<Long, Integer> list = postings.get(term);
+                if (list == null) {
+                    return new SearchResult(Collections.emptyList(), 0);
+                }
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(Map::size));
+
+            PriorityQueue<ScoredHit> heap = new PriorityQueue<>(Math.max(topK, 1));
+            int total = 0;
+            outer:
+            for (Map.Entry<Long, Integer> candidate : lists.get(0).entrySet()) {
+                Long productId = candidate.getKey();
+                int frequency = candidate.getValue();
+                for (int i = 1; i < lists.size(); i++) {
+                    Integer tf = lists.get(i).get(productId);
+                    if (tf == null) {
+                        continue outer;
+                    }
+                    frequency += tf;
+                }
+                total++;
+                if (topK <= 0) {
+                    continue;
+                }
+                IndexedProduct doc = documents.get(productId);
+                double score = frequency + popularityWeight * Math.log1p(doc.popularity);
+                if (heap.size() < topK) {
+                    heap.add(new ScoredHit(doc, score));
+                } else if (score > heap.peek().score) {
+                    heap.poll();
+                    heap.add(new ScoredHit(doc, score));
+                }
+            }
+
+            List<ScoredHit> ranked = new ArrayList<>(heap);
+            ranked.sort(Collections.reverseOrder());
+            List<ProductSummary> hits = new ArrayList<>(Math.max(ranked.size() - offset, 0));
+            for (int i = offset; i < ranked.size(); i++) {
+                hits.add(ranked.get(i).doc.summary);
+            }
+            return new SearchResult(hits, total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 单次查询可访问的结果上限（offset + size）
+     */
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    /**
+     * 获取索引统计信息
+     */
+    public Map<String, Object> getStats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("products", documents.size());
+            stats.put("terms", postings.size());
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addDocument(Product product) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String term : tokenize(product.getName(), false)) {
+            frequencies.merge(term, NAME_WEIGHT, Integer::sum);
+        }
+        for (String term : tokenize(product.getDescription(), false)) {
+            frequencies.merge(term, DESCRIPTION_WEIGHT, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), key -> new HashMap<>()).put(product.getId(), entry.getValue());
+        }
+        documents.put(product.getId(), new IndexedProduct(ProductSummary.from(product),
+                Math.max(product.getPopularity() != null ? product.getPopularity() : 0, 0),
+                frequencies.keySet()));
+    }
+
+    private void removeDocument(Long productId) {
+        IndexedProduct doc = documents.remove(productId);
+        if (doc == null) {
+            return;
+        }
+        for (String term : doc.terms) {
+            Map<Long, Integer> list = postings.get(term);
+            if (list != null) {
+                list.remove(productId);
+                if (list.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    /**
+     * 切分检索词：英文和数字按连续字母数字切分为单词（转小写），中日韩文字切分为单字和相邻二元组。
+     * 查询时两个字以上的中文只取二元组，保证命中的商品包含连续的原文。
+     */
+    static List<String> tokenize(String text, boolean query) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        StringBuilder word = new StringBuilder();
+        List<Integer> cjk = new ArrayList<>();
+        int i = 0;
+        while (i < lower.length()) {
+            int codePoint = lower.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (isCjk(codePoint)) {
+                flushWord(word, terms);
+                cjk.add(codePoint);
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                flushCjk(cjk, terms, query);
+                word.appendCodePoint(codePoint);
+            } else {
+                flushWord(word, terms);
+                flushCjk(cjk, terms, query);
+            }
+        }
+        flushWord(word, terms);
+        flushCjk(cjk, terms, query);
+        return terms;
+    }
+
+    private static void flushWord(StringBuilder word, List<String> terms) {
+        if (word.length() > 0) {
+            terms.add(word.toString());
+            word.setLength(0);
+        }
+    }
+
+    private static void flushCjk(List<Integer> run, List<String> terms, boolean query) {
+        if (run.isEmpty()) {
+            return;
+        }
+        if (!query || run.size() == 1) {
+            for (int codePoint : run) {
+                terms.add(new String(Character.toChars(codePoint)));
+            }
+        }
+        for (int i = 0; i + 1 < run.size(); i++) {
+            terms.add(new StringBuilder(4).appendCodePoint(run.get(i)).appendCodePoint(run.get(i + 1)).toString());
+        }
+        run.clear();
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private static class IndexedProduct {
+        private final ProductSummary summary;
+        private final int popularity;
+        private final Set<String> terms;
+
+        IndexedProduct(ProductSummary summary, int popularity, Set<String> terms) {
+            this.summary = summary;
+            this.popularity = popularity;
+            this.terms = terms;
+        }
+    }
+
+    private static class ScoredHit implements Comparable<ScoredHit> {
+        private final IndexedProduct doc;
+        private final double score;
+
+        ScoredHit(IndexedProduct doc, double score) {
+            this.doc = doc;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(ScoredHit other) {
+            int byScore = Double.compare(score, other.score);
+            // 得分相同时ID较大（较新）的商品排在前面
+            return byScore != 0 ? byScore : Long.compare(doc.summary.id(), other.doc.summary.id());
+        }
+    }
+
+    /**
+     * 检索结果
+     */
+    public static class SearchResult {
+        private final List<ProductSummary> hits;
+        private final int total;
+
+        public SearchResult(List<ProductSummary> hits, int total) {
+            this.hits = hits;
+            this.total = total;
+        }
+
+        public List<ProductSummary> getHits() { return hits; }
+        public int getTotal() { return total; }
+    }
+}
@@ -2,34 +2,141 @@ package org.example.startup.service;
 
 import org.example.startup.model.Product;
 import org.example.startup.repository.ProductRepository;
+import org.example.startup.dto.CursorPage;
 import org.example.startup.dto.PageResponse;
+import org.example.startup.dto.ProductSummary;
+import org.example.startup.store.CartStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 @Transactional
 public class ProductService {
     
+    private static final Logger logger = LoggerFactory.getLogger(ProductService.class);
+    
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+    
+    // 批量查询单次最多允许的商品ID数
+    @Value("${product.batch.max-ids:100}")
+    private int batchMaxIds;
+    
     @Autowired
     private ProductRepository productRepository;
     
     @Autowired
     private RedissonStockService redissonStockService;
     
-    public List<Product> getAllProducts() {
-        // 如果数据库中没有数据，返回示例数据
-        List<Product> products = productRepository.findAll();
-        return products;
+    @Autowired
+    private CartStore cartStore;
+    
+    @Autowired
+    private ProductCache productCache;
+    
+    @Autowired
+    private ProductIndexService productIndexService;
+    
+    @Autowired
+    private CatalogSnapshotService catalogSnapshotService;
+    
+    @Autowired
+    private StaticSiteGenerator staticSiteGenerator;
+    
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+    
+    @Autowired
+    private ProductFacetService productFacetService;
+    
+    @Autowired
+    private ProductChangeReloader productChangeReloader;
+    
+    /**
+     * 查询全部商品的列表投影，不加载完整描述
+     */
+    @Transactional(readOnly = true)
+    public List<ProductSummary> getAllProducts() {
+        return productRepository.findAllSummaries();
+    }
+    
+    @Transactional(readOnly = true)
+    public PageResponse<ProductSummary> getProductsWithPagination(int page, int size, String sort) {
+        String pageKey = sort + ":" + page + ":" + size;
+        return productCache.getPage(pageKey, () -> loadProductPage(page, size, sort));
     }
     
-    public PageResponse<Product> getProductsWithPagination(int page, int size, String sort) {
+    /**
+     * 分页查询商品，指定分类时只返回该分类下的商品
+     */
+    @Transactional(readOnly = true)
+    public PageResponse<ProductSummary> getProductsWithPagination(int page, int size, String sort, String category) {
+        if (category == null || category.isBlank()) {
+            return getProductsWithPagination(page, size, sort);
+        }
+        String pageKey = "category:" + category + ":" + sort + ":" + page + ":" + size;
+        return productCache.getPage(pageKey, () -> loadCategoryPage(category, page, size, sort));
+    }
+    
+    private PageResponse<ProductSummary> loadCategoryPage(String category, int page, int size, String sort) {
+        // 走 (category, 排序键, id) 索引，总数取自分面计数
+        Sort sortObj;
+        if ("price".equals(sort)) {
+            sortObj = Sort.by(Sort.Direction.ASC, "price", "id");
+        } else {
+            sortObj = Sort.by(Sort.Direction.DESC, "popularity", "id");
+        }
+        List<ProductSummary> content = productRepository.findSummariesByCategory(category, PageRequest.of(page, size, sortObj));
+        long total = productFacetService.count(category);
+        int totalPages = (int) ((total + size - 1) / size);
+        return new PageResponse<>(content, totalPages, total, size, page);
+    }
+    
+    /**
+     * 全部分类，按商品数降序
+     */
+    public List<String> getCategories() {
+        return productFacetService.getCategories();
+    }
+    
+    /**
+     * 获取分面计数（分类、价格区间、是否有货）
+     */
+    public Map<String, Object> getFacets(String category) {
+        return productFacetService.getFacets(category == null || category.isBlank() ? null : category);
+    }
+    
+    private PageResponse<ProductSummary> loadProductPage(int page, int size, String sort) {
+        // 优先走Redis排序索引，索引不可用时回退到数据库分页
+        try {
+            PageResponse<ProductSummary> indexed = productIndexService.getPage(page, size, sort);
+            if (indexed != null) {
+                return indexed;
+            }
+        } catch (Exception e) {
+            logger.warn("商品排序索引查询失败，回退到数据库: {}", e.getMessage());
+        }
+        return loadProductPageFromDb(page, size, sort);
+    }
+    
+    private PageResponse<ProductSummary> loadProductPageFromDb(int page, int size, String sort) {
         // 创建排序对象
         Sort sortObj;
         if ("price".equals(sort)) {
@@ -42,7 +149,7 @@ public class ProductService {
         Pageable pageable = PageRequest.of(page, size, sortObj);
         
         // 获取分页数据
-        Page<Product> productPage = productRepository.findAll(pageable);
+        Page<ProductSummary> productPage = productRepository.findSummaries(pageable);
         
         // 返回数据库分页结果
         return new PageResponse<>(
@@ -54,15 +161,153 @@ public class ProductService {
         );
     }
     
+    /**
+     * 游标分页查询商品，不执行COUNT查询，翻页深度和人气变化都不影响结果的连续性
+     * @param after 上一页返回的nextCursor（格式为 排序值,商品ID），为空时查询第一页
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<ProductSummary> getProductsAfter(String after, int size, String sort) {
+        int pageSize = Math.min(Math.max(size, 1), MAX_CURSOR_PAGE_SIZE);
+        boolean byPrice = "price".equals(sort);
+        // 多取一条用于判断是否还有下一页
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        
+        List<ProductSummary> products;
+        if (after == null || after.isEmpty()) {
+            products = byPrice ? productRepository.findFirstByPrice(limit) : productRepository.findFirstByPopularity(limit);
+        } else {
+            int sep = after.lastIndexOf(',');
+            if (sep <= 0) {
+                throw new IllegalArgumentException("无效的分页游标: " + after);
+            }
+            try {
+                String sortValue = after.substring(0, sep);
+                Long id = Long.valueOf(after.substring(sep + 1));
+                products = byPrice
+                        ? productRepository.findAfterByPrice(new BigDecimal(sortValue), id, limit)
+                        : productRepository.findAfterByPopularity(Integer.valueOf(sortValue), id, limit);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("无效的分页游标: " + after);
+            }
+        }
+        
+        boolean hasMore = products.size() > pageSize;
+        if (hasMore) {
+            products = products.subList(0, pageSize);
+        }
+        String nextCursor = null;
+        if (hasMore) {
+            ProductSummary last = products.get(products.size() - 1);
+            Object sortValue = byPrice ? last.price().toPlainString()
+                    : (last.popularity() != null ? last.popularity() : 0);
+            nextCursor = sortValue + "," + last.id();
+        }
+        return new CursorPage<>(products, nextCursor, hasMore, pageSize);
+    }
+    
+    /**
+     * 全文检索商品，走进程内倒排索引，按词频和人气排序
+     */
+    public PageResponse<ProductSummary> searchProducts(String query, int page, int size) {
+        if (page < 0) {
+            throw new IllegalArgumentException("页码不能为负数");
+        }
+        int pageSize = Math.min(Math.max(size, 1), MAX_CURSOR_PAGE_SIZE);
+        // 按long计算偏移量，避免大页码溢出为负数；超出结果上限的页直接拒绝，不返回空结果
+        int maxPages = (productSearchIndex.getMaxResults() + pageSize - 1) / pageSize;
+        long offset = (long) page * pageSize;
+        if (offset >= productSearchIndex.getMaxResults()) {
+            throw new IllegalArgumentException("检索结果最多返回 " + maxPages + " 页");
+        }
+        ProductSearchIndex.SearchResult result = productSearchIndex.search(query, (int) offset, pageSize);
+        // 总页数不超过可访问的页数，客户端按总页数翻页时不会越界
+        int totalPages = Math.min((result.getTotal() + pageSize - 1) / pageSize, maxPages);
+        return new PageResponse<>(result.getHits(), totalPages, result.getTotal(), pageSize, page);
+    }
+    
+    /**
+     * 通过两级缓存读取商品，返回的对象为共享缓存，不得修改
+     */
+    @Transactional(readOnly = true)
     public Product getProductById(Long id) {
-        return productRepository.findById(id).orElse(null);
+        return productCache.get(id);
+    }
+    
+    /**
+     * 批量读取商品，经两级缓存一次性获取，缓存未命中的部分合并为一次数据库查询
+     * 结果按请求顺序排列（重复ID只返回一次），不存在的商品ID放入missing
+     */
+    @Transactional(readOnly = true)
+    public BatchResult getProductsByIds(List<Long> ids) {
+        Set<Long> uniqueIds = new LinkedHashSet<>(ids);
+        uniqueIds.remove(null);
+        if (uniqueIds.size() > batchMaxIds) {
+            throw new IllegalArgumentException("单次最多查询 " + batchMaxIds + " 个商品");
+        }
+        
+        Map<Long, Product> found = productCache.getAll(uniqueIds);
+        List<Product> products = new ArrayList<>(found.size());
+        List<Long> missing = new ArrayList<>();
+        for (Long id : uniqueIds) {
+            Product product = found.get(id);
+            if (product != null) {
+                products.add(product);
+            } else {
+                missing.add(id);
+            }
+        }
+        return new BatchResult(products, missing);
     }
     
+    /**
+     * 获取商品缓存统计信息
+     */
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(productCache.getStats());
+        stats.put("snapshots", catalogSnapshotService.getStats());
+        stats.put("search", productSearchIndex.getStats());
+        stats.put("changeReloads", productChangeReloader.getStats());
+        return stats;
+    }
+    
+    /**
+     * 保存商品。人气和库存不随商品编辑写回（见 Product），已有商品沿用数据库中的人气，
+     * 使返回值和排序索引与数据库一致
+     */
     public Product saveProduct(Product product) {
+        boolean existing = product.getId() != null;
+        if (existing) {
+            productRepository.findById(product.getId())
+                    .ifPresent(current -> product.setPopularity(current.getPopularity()));
+        }
+        // 人气作为游标分页的排序键，不允许为空
+        if (product.getPopularity() == null) {
+            product.setPopularity(0);
+        }
         Product savedProduct = productRepository.save(product);
-        // 同步库存到Redis
-        if (savedProduct.getId() != null && savedProduct.getStock() != null) {
-            redissonStockService.initStock(savedProduct.getId(), savedProduct.getStock());
+        // 已有商品可能改价，通知购物车校正汇总
+        if (existing) {
+            cartStore.onPriceChanged(savedProduct.getId());
+        }
+        afterCommit(() -> {
+            productCache.invalidate(savedProduct.getId());
+            productIndexService.index(savedProduct);
+            productSearchIndex.index(savedProduct);
+            productFacetService.index(savedProduct);
+            catalogSnapshotService.bumpVersion();
+            staticSiteGenerator.markDirty(savedProduct.getId());
+        });
+        if (!existing) {
+            // 新建商品的初始库存写入Redis，之后库存只通过库存接口修改
+            if (savedProduct.getStock() != null) {
+                redissonStockService.initStock(savedProduct.getId(), savedProduct.getStock());
+            }
+        } else {
+            // 请求体中的库存不写回，返回Redis中的实时库存
+            Integer stock = redissonStockService.getStock(savedProduct.getId());
+            if (stock != null) {
+                savedProduct.setStock(stock);
+            }
         }
         return savedProduct;
     }
@@ -71,5 +316,54 @@ public class ProductService {
         productRepository.deleteById(id);
         // 清理Redis中的库存缓存
         redissonStockService.deleteStock(id);
+        afterCommit(() -> {
+            productCache.invalidate(id);
+            productIndexService.remove(id);
+            productSearchIndex.remove(id);
+            productFacetService.remove(id);
+            catalogSnapshotService.bumpVersion();
+            staticSiteGenerator.markDirty(id);
+        });
+    }
+    
+    /**
+     * 事务提交后再清除缓存、更新排序索引，避免其他请求在提交前把旧数据重新写回缓存
+     */
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    action.run();
+                } catch (Exception e) {
+                    logger.error("商品缓存或排序索引更新失败: {}", e.getMessage(), e);
+                }
+            }
+        });
+    }
+    
+    /**
+     * 批量查询结果
+     */
+    public static class BatchResult {
+        private List<Product> products;  // 按请求顺序排列的商品
+        private List<Long> missing;      // 不存在的商品ID
+        
+        public BatchResult(List<Product> products, List<Long> missing) {
+            this.products = products;
+            this.missing = missing;
+        }
+        
+        // Getters
+        public List<Product> getProducts() { return products; }
+        public List<Long> getMissing() { return missing; }
+        
+        // Setters
+        public void setProducts(List<Product> products) { this.products = products; }
+        public void setMissing(List<Long> missing) { this.missing = missing; }
     }
-}
\ No newline at end of file
+}
@@ -1,48 +1,310 @@
 package org.example.startup.service;
 
+import jakarta.annotation.PostConstruct;
 import org.example.startup.model.Product;
 import org.example.startup.repository.ProductRepository;
-import org.redisson.api.RAtomicLong;
 import org.redisson.api.RBatch;
+import org.redisson.api.RBucketAsync;
+import org.redisson.api.RFuture;
+import org.redisson.api.RMap;
+import org.redisson.api.RScript;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Service
 public class RedissonStockService {
 
+    private static final Logger logger = LoggerFactory.getLogger(RedissonStockService.class);
+
     @Autowired
     private RedissonClient redissonClient;
 
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private StockNearCache stockNearCache;
+
     private static final String STOCK_PREFIX = "stock:";
     private static final long STOCK_CACHE_EXPIRE = 3600; // 1小时过期
 
     /**
-     * 初始化商品库存到Redis
+     * 库存变更流，扣减/归还时写入商品ID，由StockWriteBehindService异步合并落库
+     */
+    public static final String STOCK_CHANGE_STREAM = "stock:changes";
+    public static final String STOCK_CHANGE_FIELD = "productId";
+
+    /**
+     * 分段库存配置：商品ID -> 分段数，仅供各节点预先确定脚本需要声明的分段键。
+     * 商品是否分段以库存键 stock:{id} 为准：分段后该键保存 "segments:N" 标记（不过期），
+     * 所有脚本先读取该标记再决定读写单计数器还是分段，本地配置过期时脚本返回 SEGMENTS_CHANGED 并重试。
+     */
+    private static final String SEGMENT_CONFIG_KEY = "stock:segments";
+    private static final String SEGMENT_MARKER_PREFIX = "segments:";
+    public static final int MAX_SEGMENTS = 64;
+
+    // 脚本返回码：调用方声明的分段数与Redis中的标记不一致
+    private static final long SEGMENTS_CHANGED = -3;
+    // 分段标记存在但部分分段键缺失，总库存未知
+    private static final long SEGMENTS_INCOMPLETE = -4;
+    private static final int MAX_SEGMENT_RETRIES = 3;
+
+    // 解析库存键中的分段标记，返回分段数，不是分段标记时返回nil
+    private static final String LUA_SEGMENT_COUNT =
+            "local function segmentCount(v) " +
+            "  return tonumber(string.match(v, '^" + SEGMENT_MARKER_PREFIX + "(%d+)$')) " +
+            "end ";
+
+    /**
+     * 批量扣减库存的Lua脚本：先校验全部商品，全部充足才统一扣减，要么全部成功要么全部不变，库存归零的商品广播售罄事件。
+     * 分段商品在同一脚本内从起始分段开始扣减，不足时依次溢出到后续分段。
+     * KEYS[1] 库存变更流，之后每个商品依次为库存键和调用方声明的分段键；
+     * ARGV[1] 过期时间（秒），ARGV[2] 商品数，之后每个商品依次为 商品ID、扣减数量、声明的分段数（未分段为0）、起始分段
+     * 返回值：{-1, i} 第i个库存不存在或分段不完整，{-2, i} 第i个库存不足，{-3, i, N} 第i个商品实际分段数为N，
+     * {0, 剩余1, ..., 剩余n} 成功（分段商品为各分段之和）
+     */
+    private static final String DEDUCT_SCRIPT =
+            LUA_SEGMENT_COUNT +
+            "local n = tonumber(ARGV[2]) " +
+            "local plan = {} " +
+            "local k = 2 " +
+            "for i = 1, n do " +
+            "  local a = 2 + (i - 1) * 4 " +
+            "  local quantity = tonumber(ARGV[a + 2]) " +
+            "  local declared = tonumber(ARGV[a + 3]) " +
+            "  local v = redis.call('get', KEYS[k]) " +
+            "  if not v then return {-1, i} end " +
+            "  local total = tonumber(v) " +
+            "  local shards = nil " +
+            "  if not total then " +
+            "    local count = segmentCount(v) " +
+            "    if count ~= declared then return {" + SEGMENTS_CHANGED + ", i, count or 0} end " +
+            "    shards = {} " +
+            "    total = 0 " +
+            "    for j = 1, count do " +
+            "      local sv = redis.call('get', KEYS[k + j]) " +
+            "      if not sv then return {-1, i} end " +
+            "      shards[j] = tonumber(sv) " +
+            "      total = total + shards[j] " +
+            "    end " +
+            "  end " +
+            "  if total < quantity then return {-2, i} end " +
+            "  plan[i] = {k, shards, quantity, tonumber(ARGV[a + 4]), total, ARGV[a + 1]} " +
+            "  k = k + 1 + declared " +
+            "end " +
+            "local result = {0} " +
+            "for i = 1, n do " +
+            "  local p = plan[i] " +
+            "  local shards = p[2] " +
+            "  if shards then " +
+            "    local need = p[3] " +
+            "    for j = 0, #shards - 1 do " +
+            "      if need == 0 then break end " +
+            "      local idx = (p[4] + j) % #shards + 1 " +
+            "      local take = math.min(shards[idx], need) " +
+            "      if take > 0 then " +
+            "        redis.call('decrby', KEYS[p[1] + idx], take) " +
+            "        need = need - take " +
+            "      end " +
+            "    end " +
+            "  else " +
+            "    redis.call('decrby', KEYS[p[1]], p[3]) " +
+            "    redis.call('expire', KEYS[p[1]], ARGV[1]) " +
+            "  end " +
+            "  local remaining = p[5] - p[3] " +
+            "  result[i + 1] = remaining " +
+            "  redis.call('xadd', KEYS[1], '*', '" + STOCK_CHANGE_FIELD + "', p[6]) " +
+            "  if remaining == 0 then " +
+            "    redis.call('publish', '" + StockNearCache.STOCK_EVENT_CHANNEL + "', '" + StockNearCache.SOLD_OUT_EVENT + "' .. p[6]) " +
+            "  end " +
+            "end " +
+            "return result";
+
+    /**
+     * 归还/增加库存的Lua脚本，分段商品归还到第一个分段（扣减时会溢出到相邻分段）
+     * 库存不存在时不从0开始累加（否则会丢失数据库中的库存），由调用方加载后重试
+     * KEYS[1] 库存键，KEYS[2..#KEYS-1] 声明的分段键，KEYS[#KEYS] 库存变更流；ARGV[1] 数量，ARGV[2] 过期时间（秒），ARGV[3] 商品ID
+     * 返回值：{0, 增加后的总库存}，{-1} 库存不存在，{-3, N} 实际分段数为N，{-4} 分段不完整
+     */
+    private static final String RESTORE_SCRIPT =
+            LUA_SEGMENT_COUNT +
+            "local v = redis.call('get', KEYS[1]) " +
+            "if not v then return {-1} end " +
+            "local total " +
+            "if not tonumber(v) then " +
+            "  local count = segmentCount(v) " +
+            "  if count ~= #KEYS - 2 then return {" + SEGMENTS_CHANGED + ", count or 0} end " +
+            "  total = tonumber(ARGV[1]) " +
+            "  for j = 2, count + 1 do " +
+            "    local sv = redis.call('get', KEYS[j]) " +
+            "    if not sv then return {" + SEGMENTS_INCOMPLETE + "} end " +
+            "    total = total + tonumber(sv) " +
+            "  end " +
+            "  redis.call('incrby', KEYS[2], ARGV[1]) " +
+            "else " +
+            "  total = redis.call('incrby', KEYS[1], ARGV[1]) " +
+            "  redis.call('expire', KEYS[1], ARGV[2]) " +
+            "end " +
+            "redis.call('xadd', KEYS[#KEYS], '*', '" + STOCK_CHANGE_FIELD + "', ARGV[3]) " +
+            "if total > 0 then " +
+            "  redis.call('publish', '" + StockNearCache.STOCK_EVENT_CHANNEL + "', '" + StockNearCache.AVAILABLE_EVENT + "' .. ARGV[3]) " +
+            "end " +
+            "return {0, total}";
+
+    /**
+     * 写入库存的Lua脚本，分段商品将库存均分到各分段
+     * KEYS[1] 库存键，KEYS[2..#KEYS-1] 声明的分段键，KEYS[#KEYS] 库存变更流；ARGV[1] 库存，ARGV[2] 过期时间（秒），ARGV[3] 商品ID，
+     * ARGV[4] 写入模式：set 总是写入并记入变更流（由异步落库写回数据库），plain 跳过已分段的商品，absent 仅在库存不存在时写入
+     * 返回值：{0} 已写入，{1} 按模式跳过，{-3, N} 实际分段数为N
+     */
+    private static final String INIT_SCRIPT =
+            LUA_SEGMENT_COUNT +
+            "local v = redis.call('get', KEYS[1]) " +
+            "if v and ARGV[4] == 'absent' then return {1} end " +
+            "local stock = tonumber(ARGV[1]) " +
+            "if v and not tonumber(v) then " +
+            "  if ARGV[4] == 'plain' then return {1} end " +
+            "  local count = segmentCount(v) " +
+            "  if count ~= #KEYS - 2 then return {" + SEGMENTS_CHANGED + ", count or 0} end " +
+            "  local base = math.floor(stock / count) " +
+            "  local extra = stock % count " +
+            "  for j = 1, count do " +
+            "    local value = base " +
+            "    if j <= extra then value = value + 1 end " +
+            "    redis.call('set', KEYS[j + 1], value) " +
+            "  end " +
+            "else " +
+            "  redis.call('set', KEYS[1], stock, 'EX', ARGV[2]) " +
+            "end " +
+            "if ARGV[4] == 'set' then " +
+            "  redis.call('xadd', KEYS[#KEYS], '*', '" + STOCK_CHANGE_FIELD + "', ARGV[3]) " +
+            "end " +
+            "local event = '" + StockNearCache.SOLD_OUT_EVENT + "' " +
+            "if stock > 0 then event = '" + StockNearCache.AVAILABLE_EVENT + "' end " +
+            "redis.call('publish', '" + StockNearCache.STOCK_EVENT_CHANNEL + "', event .. ARGV[3]) " +
+            "return {0}";
+
+    /**
+     * 将单计数器库存拆分到N个分段的Lua脚本，库存键改为分段标记；分段和标记不过期，直到关闭分段或删除库存
+     * KEYS[1] 库存键，KEYS[2..N+1] 分段键
+     * 返回值：-1 库存不存在，-3 已分段，否则为拆分的总库存
+     */
+    private static final String SPLIT_SEGMENTS_SCRIPT =
+            "local stock = redis.call('get', KEYS[1]) " +
+            "if not stock then return -1 end " +
+            "local total = tonumber(stock) " +
+            "if not total then return " + SEGMENTS_CHANGED + " end " +
+            "local n = #KEYS - 1 " +
+            "local base = math.floor(total / n) " +
+            "local extra = total % n " +
+            "for i = 1, n do " +
+            "  local value = base " +
+            "  if i <= extra then value = value + 1 end " +
+            "  redis.call('set', KEYS[i + 1], value) " +
+            "end " +
+            "redis.call('set', KEYS[1], '" + SEGMENT_MARKER_PREFIX + "' .. n) " +
+            "return total";
+
+    /**
+     * 将N个分段合并回单计数器的Lua脚本
+     * KEYS[1] 库存键，KEYS[2..N+1] 分段键；ARGV[1] 过期时间（秒）
+     * 返回值：-1 库存不存在，-3 分段数与标记不一致，-4 分段不完整（不做修改），否则为合并后的总库存
+     */
+    private static final String MERGE_SEGMENTS_SCRIPT =
+            LUA_SEGMENT_COUNT +
+            "local v = redis.call('get', KEYS[1]) " +
+            "if not v then return -1 end " +
+            "if tonumber(v) then return tonumber(v) end " +
+            "if segmentCount(v) ~= #KEYS - 1 then return " + SEGMENTS_CHANGED + " end " +
+            "local total = 0 " +
+            "for i = 2, #KEYS do " +
+            "  local value = redis.call('get', KEYS[i]) " +
+            "  if not value then return " + SEGMENTS_INCOMPLETE + " end " +
+            "  total = total + tonumber(value) " +
+            "end " +
+            "for i = 2, #KEYS do redis.call('del', KEYS[i]) end " +
+            "redis.call('set', KEYS[1], total, 'EX', ARGV[1]) " +
+            "return total";
+
+    /**
+     * 本地缓存的分段配置，避免每次扣减前都到Redis查询商品是否启用了分段
+     */
+    private final Map<Long, Integer> segmentCounts = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void loadSegmentConfig() {
+        try {
+            refreshSegmentConfig();
+        } catch (Exception e) {
+            logger.warn("加载分段库存配置失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 定时从Redis刷新分段配置，使其他节点的启用/关闭操作在本节点生效
+     * 配置只用于减少脚本因分段数不一致而重试的次数，不影响正确性
+     */
+    @Scheduled(fixedDelayString = "${stock.segment.refresh-interval-ms:5000}")
+    public void refreshSegmentConfig() {
+        RMap<String, String> config = redissonClient.getMap(SEGMENT_CONFIG_KEY, StringCodec.INSTANCE);
+        Map<Long, Integer> latest = new ConcurrentHashMap<>();
+        for (Map.Entry<String, String> entry : config.readAllMap().entrySet()) {
+            latest.put(Long.valueOf(entry.getKey()), Integer.valueOf(entry.getValue()));
+        }
+        segmentCounts.keySet().retainAll(latest.keySet());
+        segmentCounts.putAll(latest);
+    }
+
+    /**
+     * 设置商品库存，覆盖Redis中的实时库存并记入变更流，分段商品将库存均分到各分段
+     * Redis中的库存是权威值，只在新建商品或管理员显式设置库存时调用
      * @param productId 商品ID
      * @param stock 库存数量
      */
     public void initStock(Long productId, Integer stock) {
-        String stockKey = STOCK_PREFIX + productId;
-        RAtomicLong atomicStock = redissonClient.getAtomicLong(stockKey);
-        atomicStock.set(stock);
-        atomicStock.expire(STOCK_CACHE_EXPIRE, TimeUnit.SECONDS);
+        writeStock(productId, stock, "set");
+    }
+
+    /**
+     * 用数据库中的库存覆盖Redis（仅用于管理员手动同步，数据库库存可能落后于Redis）
+     * 分段商品的库存以Redis为准，不会被覆盖
+     * @param productId 商品ID
+     * @param stock 数据库中的库存数量
+     */
+    public void refreshStock(Long productId, Integer stock) {
+        writeStock(productId, stock, "plain");
     }
 
     /**
-     * 从数据库同步库存到Redis
+     * 从数据库同步库存到Redis（分段商品不同步）
      * @param productId 商品ID
      */
     public void syncStockFromDB(Long productId) {
         Product product = productRepository.findById(productId)
                 .orElseThrow(() -> new RuntimeException("商品不存在"));
-        initStock(productId, product.getStock());
+        refreshStock(productId, product.getStock());
+    }
+
+    private void writeStock(Long productId, Integer stock, String mode) {
+        evalWithSegments(productId, INIT_SCRIPT, true,
+                String.valueOf(stock), String.valueOf(STOCK_CACHE_EXPIRE), String.valueOf(productId), mode);
+        stockNearCache.invalidate(productId);
     }
 
     /**
@@ -51,20 +313,42 @@ public class RedissonStockService {
      * @return 库存数量，不存在返回null
      */
     public Integer getStock(Long productId) {
-        String stockKey = STOCK_PREFIX + productId;
-        RAtomicLong atomicStock = redissonClient.getAtomicLong(stockKey);
+        // 售罄商品与近端缓存命中时无需访问Redis
+        if (stockNearCache.isSoldOut(productId)) {
+            return 0;
+        }
+        Integer cached = stockNearCache.get(productId);
+        if (cached != null) {
+            return cached;
+        }
         
-        if (!atomicStock.isExists()) {
-            // 如果Redis中不存在，尝试从数据库同步
-            try {
-                syncStockFromDB(productId);
-                return (int) atomicStock.get();
-            } catch (Exception e) {
-                return null;
-            }
+        Integer stock = loadStock(productId);
+        if (stock != null) {
+            stockNearCache.put(productId, stock);
+        }
+        return stock;
+    }
+
+    /**
+     * 从Redis读取库存，库存键不存在时从数据库加载
+     * 分段商品的分段不完整时返回null，不从数据库重新同步（否则会与剩余分段重复计算库存）
+     */
+    private Integer loadStock(Long productId) {
+        Set<Long> incomplete = new HashSet<>();
+        Integer stock = getStocks(List.of(productId), incomplete).get(productId);
+        if (stock != null || incomplete.contains(productId)) {
+            return stock;
         }
         
-        return (int) atomicStock.get();
+        try {
+            Product product = productRepository.findById(productId)
+                    .orElseThrow(() -> new RuntimeException("商品不存在"));
+            // 仅在库存键仍不存在时写入，避免覆盖其他节点同时加载或分段的库存
+            writeStock(productId, product.getStock(), "absent");
+            return getStocks(List.of(productId)).get(productId);
+        } catch (Exception e) {
+            return null;
+        }
     }
 
     /**
@@ -74,30 +358,100 @@ public class RedissonStockService {
      * @return 扣减后的库存数量，-1表示库存不存在，-2表示库存不足
      */
     public Long deductStock(Long productId, Integer quantity) {
-        String stockKey = STOCK_PREFIX + productId;
-        RAtomicLong atomicStock = redissonClient.getAtomicLong(stockKey);
-        
-        // 检查库存是否存在
-        if (!atomicStock.isExists()) {
-            return -1L;
+        return deductStock(productId, quantity, null);
+    }
+
+    /**
+     * 原子性扣减库存，分段模式下按用户选择起始分段
+     * @param productId 商品ID
+     * @param quantity 扣减数量
+     * @param userId 用户ID，用于选择分段，为null时随机选择
+     * @return 扣减后的总库存，-1表示库存不存在，-2表示库存不足
+     */
+    public Long deductStock(Long productId, Integer quantity, Long userId) {
+        StockDeductResult result = deductAll(Map.of(productId, quantity), userId);
+        return result.isSuccess() ? result.getRemaining().get(productId) : result.getCode();
+    }
+
+    /**
+     * 批量原子扣减库存（全部成功或全部失败）
+     * @param items 商品ID -> 扣减数量
+     * @return 扣减结果，失败时包含失败原因及对应的商品ID
+     */
+    public StockDeductResult deductAll(Map<Long, Integer> items) {
+        return deductAll(items, null);
+    }
+
+    /**
+     * 批量原子扣减库存（全部成功或全部失败），分段模式下按用户选择起始分段
+     * 单商品与分段商品都由同一次脚本调用校验并扣减
+     * @param items 商品ID -> 扣减数量
+     * @param userId 用户ID，为null时随机选择分段
+     * @return 扣减结果，失败时包含失败原因及对应的商品ID
+     */
+    public StockDeductResult deductAll(Map<Long, Integer> items, Long userId) {
+        if (items.isEmpty()) {
+            return StockDeductResult.success(Collections.emptyMap());
         }
         
-        // 原子性检查并扣减
-        long currentStock = atomicStock.get();
-        if (currentStock < quantity) {
-            return -2L;
+        List<Long> productIds = new ArrayList<>(items.keySet());
+        int n = productIds.size();
+        RScript script = redissonClient.getScript(StringCodec.INSTANCE);
+        for (int attempt = 1; ; attempt++) {
+            List<Object> keys = new ArrayList<>();
+            Object[] args = new Object[2 + 4 * n];
+            keys.add(STOCK_CHANGE_STREAM);
+            args[0] = String.valueOf(STOCK_CACHE_EXPIRE);
+            args[1] = String.valueOf(n);
+            for (int i = 0; i < n; i++) {
+                Long productId = productIds.get(i);
+                int segments = getSegmentCount(productId);
+                int declared = segments > 1 ? segments : 0;
+                keys.addAll(stockKeys(productId, declared));
+                args[2 + 4 * i] = String.valueOf(productId);
+                args[3 + 4 * i] = String.valueOf(items.get(productId));
+                args[4 + 4 * i] = String.valueOf(declared);
+                args[5 + 4 * i] = String.valueOf(declared > 0 ? startSegment(declared, userId) : 0);
+            }
+            
+            List<Long> reply = script.eval(RScript.Mode.READ_WRITE, DEDUCT_SCRIPT, RScript.ReturnType.MULTI,
+                    keys, args);
+            long code = reply.get(0);
+            if (code == SEGMENTS_CHANGED) {
+                // Lua数组下标从1开始
+                Long productId = productIds.get(reply.get(1).intValue() - 1);
+                updateSegmentHint(productId, reply.get(2).intValue());
+                if (attempt < MAX_SEGMENT_RETRIES) {
+                    continue;
+                }
+                return StockDeductResult.failure(-1, productId);
+            }
+            if (code < 0) {
+                return StockDeductResult.failure(code, productIds.get(reply.get(1).intValue() - 1));
+            }
+            
+            Map<Long, Long> remaining = new LinkedHashMap<>();
+            for (int i = 0; i < n; i++) {
+                remaining.put(productIds.get(i), reply.get(i + 1));
+                stockNearCache.put(productIds.get(i), reply.get(i + 1).intValue());
+            }
+            return StockDeductResult.success(remaining);
         }
-        
-        long remaining = atomicStock.addAndGet(-quantity);
-        if (remaining < 0) {
-            // 如果扣减后为负数，回滚
-            atomicStock.addAndGet(quantity);
-            return -2L;
+    }
+
+    /**
+     * 批量归还库存（用于批量扣减后的补偿）
+     * @param items 商品ID -> 归还数量
+     */
+    public void restoreAll(Map<Long, Integer> items) {
+        for (Map.Entry<Long, Integer> entry : items.entrySet()) {
+            try {
+                addStock(entry.getKey(), entry.getValue());
+            } catch (Exception e) {
+                // 继续归还其他商品
+                logger.error("归还商品 {} 的库存 {} 失败: {}", entry.getKey(), entry.getValue(), e.getMessage());
+            }
         }
-        
-        // 重新设置过期时间
-        atomicStock.expire(STOCK_CACHE_EXPIRE, TimeUnit.SECONDS);
-        return remaining;
     }
 
     /**
@@ -107,12 +461,96 @@ public class RedissonStockService {
      * @return 增加后的库存数量
      */
     public Long addStock(Long productId, Integer quantity) {
-        String stockKey = STOCK_PREFIX + productId;
-        RAtomicLong atomicStock = redissonClient.getAtomicLong(stockKey);
+        List<Long> reply = evalRestore(productId, quantity);
+        if (reply.get(0) == -1 && loadStock(productId) != null) {
+            // 库存键已过期，按数据库加载后重试
+            reply = evalRestore(productId, quantity);
+        }
+        stockNearCache.invalidate(productId);
+        if (reply.get(0) == -1) {
+            throw new RuntimeException("商品库存不存在");
+        }
+        if (reply.get(0) == SEGMENTS_INCOMPLETE) {
+            throw new RuntimeException("分段库存不完整，请重新初始化库存");
+        }
+        return reply.get(1);
+    }
+
+    private List<Long> evalRestore(Long productId, Integer quantity) {
+        return evalWithSegments(productId, RESTORE_SCRIPT, true,
+                String.valueOf(quantity), String.valueOf(STOCK_CACHE_EXPIRE), String.valueOf(productId));
+    }
+
+    /**
+     * 批量读取Redis中的库存（分段商品多一次往返）
+     * @param productIds 商品ID集合
+     * @return 商品ID -> 库存，Redis中不存在的商品不包含在结果中
+     */
+    public Map<Long, Integer> getStocks(Collection<Long> productIds) {
+        return getStocks(productIds, new HashSet<>());
+    }
+
+    /**
+     * 批量读取Redis中的库存
+     * 分段商品的库存为各分段之和；任一分段缺失时总库存未知，不包含在结果中，商品ID加入incomplete
+     * @param productIds 商品ID集合
+     * @param incomplete 输出参数，分段不完整的商品ID
+     * @return 商品ID -> 库存，Redis中不存在或分段不完整的商品不包含在结果中
+     */
+    public Map<Long, Integer> getStocks(Collection<Long> productIds, Set<Long> incomplete) {
+        RBatch batch = redissonClient.createBatch();
+        Map<Long, RFuture<String>> futures = new LinkedHashMap<>();
+        for (Long productId : productIds) {
+            RBucketAsync<String> bucket = batch.getBucket(stockKey(productId), StringCodec.INSTANCE);
+            futures.put(productId, bucket.getAsync());
+        }
+        batch.execute();
+        
+        Map<Long, Integer> stocks = new LinkedHashMap<>();
+        Map<Long, List<RFuture<String>>> segmented = new LinkedHashMap<>();
+        RBatch segmentBatch = redissonClient.createBatch();
+        for (Map.Entry<Long, RFuture<String>> entry : futures.entrySet()) {
+            Long productId = entry.getKey();
+            String value = entry.getValue().toCompletableFuture().join();
+            if (value == null) {
+                continue;
+            }
+            int segments = parseSegmentCount(value);
+            updateSegmentHint(productId, segments);
+            if (segments == 0) {
+                stocks.put(productId, Integer.parseInt(value));
+                continue;
+            }
+            List<RFuture<String>> values = new ArrayList<>(segments);
+            for (int i = 0; i < segments; i++) {
+                values.add(segmentBatch.<String>getBucket(segmentKey(productId, i), StringCodec.INSTANCE).getAsync());
+            }
+            segmented.put(productId, values);
+        }
+        if (segmented.isEmpty()) {
+            return stocks;
+        }
         
-        long newStock = atomicStock.addAndGet(quantity);
-        atomicStock.expire(STOCK_CACHE_EXPIRE, TimeUnit.SECONDS);
-        return newStock;
+        segmentBatch.execute();
+        for (Map.Entry<Long, List<RFuture<String>>> entry : segmented.entrySet()) {
+            int total = 0;
+            boolean complete = true;
+            for (RFuture<String> future : entry.getValue()) {
+                String value = future.toCompletableFuture().join();
+                if (value == null) {
+                    complete = false;
+                    break;
+                }
+                total += Integer.parseInt(value);
+            }
+            if (complete) {
+                stocks.put(entry.getKey(), total);
+            } else {
+                incomplete.add(entry.getKey());
+                logger.error("商品 {} 的分段库存不完整，总库存未知", entry.getKey());
+            }
+        }
+        return stocks;
     }
 
     /**
@@ -125,37 +563,202 @@ public class RedissonStockService {
             return;
         }
         
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new RuntimeException("商品不存在"));
-        
-        product.setStock(redisStock);
-        productRepository.save(product);
+        // 库存列不随实体保存写回，直接更新
+        if (productRepository.updateStock(productId, redisStock) == 0) {
+            throw new RuntimeException("商品不存在");
+        }
     }
 
     /**
-     * 删除Redis中的库存缓存
+     * 删除Redis中的库存缓存（包括分段）
      * @param productId 商品ID
      */
     public void deleteStock(Long productId) {
-        String stockKey = STOCK_PREFIX + productId;
-        RAtomicLong atomicStock = redissonClient.getAtomicLong(stockKey);
-        atomicStock.delete();
+        int segments = readSegmentCount(productId);
+        RBatch batch = redissonClient.createBatch();
+        for (int i = 0; i < segments; i++) {
+            batch.getBucket(segmentKey(productId, i)).deleteAsync();
+        }
+        batch.getBucket(stockKey(productId)).deleteAsync();
+        batch.getMap(SEGMENT_CONFIG_KEY, StringCodec.INSTANCE).fastRemoveAsync(String.valueOf(productId));
+        batch.execute();
+        segmentCounts.remove(productId);
+        stockNearCache.invalidate(productId);
     }
 
     /**
-     * 批量初始化库存
+     * 批量用数据库库存预热Redis，只写入Redis中尚不存在的库存
+     * 数据库库存由异步落库写入，落后于Redis；已存在的库存（含其他节点正在扣减的）不被覆盖
      * @param products 商品列表
      */
-    public void batchInitStock(List<Product> products) {
+    public void batchSeedStock(List<Product> products) {
         RBatch batch = redissonClient.createBatch();
-        
+        int count = 0;
         for (Product product : products) {
-            String stockKey = STOCK_PREFIX + product.getId();
-            batch.getAtomicLong(stockKey).setAsync(product.getStock());
-            batch.getAtomicLong(stockKey).expireAsync(STOCK_CACHE_EXPIRE, TimeUnit.SECONDS);
+            if (product.getId() == null || product.getStock() == null) {
+                continue;
+            }
+            count++;
+            // absent 模式下库存键存在即跳过，无需声明分段键
+            List<Object> keys = stockKeys(product.getId(), 0);
+            keys.add(STOCK_CHANGE_STREAM);
+            batch.getScript(StringCodec.INSTANCE).evalAsync(RScript.Mode.READ_WRITE,
+                    INIT_SCRIPT, RScript.ReturnType.MULTI, keys,
+                    String.valueOf(product.getStock()), String.valueOf(STOCK_CACHE_EXPIRE),
+                    String.valueOf(product.getId()), "absent");
+        }
+        if (count == 0) {
+            return;
         }
-        
         batch.execute();
+        for (Product product : products) {
+            stockNearCache.invalidate(product.getId());
+        }
+    }
+
+    /**
+     * 为热点商品启用分段库存：将当前库存均分到N个分段计数器 stock:{id}:0..N-1
+     * 分段键与库存键使用相同的哈希标签，位于同一槽位，拆分/合并/扣减脚本在集群模式下也可执行
+     * @param productId 商品ID
+     * @param segments 分段数（2~MAX_SEGMENTS）
+     * @return 拆分的总库存
+     */
+    public long enableSegments(Long productId, int segments) {
+        if (segments < 2 || segments > MAX_SEGMENTS) {
+            throw new RuntimeException("分段数必须在2到" + MAX_SEGMENTS + "之间");
+        }
+        if (readSegmentCount(productId) > 0) {
+            // 已分段时先合并再重新拆分
+            disableSegments(productId);
+        }
+        if (getStock(productId) == null) {
+            throw new RuntimeException("商品库存不存在");
+        }
+        
+        RScript script = redissonClient.getScript(StringCodec.INSTANCE);
+        Long total = script.eval(RScript.Mode.READ_WRITE, SPLIT_SEGMENTS_SCRIPT, RScript.ReturnType.INTEGER,
+                stockKeys(productId, segments));
+        if (total == SEGMENTS_CHANGED) {
+            throw new RuntimeException("商品已被其他请求设置为分段库存");
+        }
+        if (total < 0) {
+            throw new RuntimeException("商品库存不存在");
+        }
+        redissonClient.getMap(SEGMENT_CONFIG_KEY, StringCodec.INSTANCE).fastPut(String.valueOf(productId), String.valueOf(segments));
+        segmentCounts.put(productId, segments);
+        stockNearCache.invalidate(productId);
+        return total;
+    }
+
+    /**
+     * 关闭分段库存：将各分段合并回单个计数器
+     * @param productId 商品ID
+     * @return 合并后的总库存
+     */
+    public long disableSegments(Long productId) {
+        int segments = readSegmentCount(productId);
+        if (segments == 0) {
+            Integer stock = getStock(productId);
+            return stock != null ? stock : 0;
+        }
+        
+        RScript script = redissonClient.getScript(StringCodec.INSTANCE);
+        Long total = script.eval(RScript.Mode.READ_WRITE, MERGE_SEGMENTS_SCRIPT, RScript.ReturnType.INTEGER,
+                stockKeys(productId, segments), String.valueOf(STOCK_CACHE_EXPIRE));
+        if (total == SEGMENTS_INCOMPLETE) {
+            throw new RuntimeException("分段库存不完整，请重新初始化库存");
+        }
+        if (total == SEGMENTS_CHANGED) {
+            throw new RuntimeException("分段配置已被其他请求修改，请重试");
+        }
+        redissonClient.getMap(SEGMENT_CONFIG_KEY, StringCodec.INSTANCE).fastRemove(String.valueOf(productId));
+        segmentCounts.remove(productId);
+        stockNearCache.invalidate(productId);
+        return Math.max(total, 0);
+    }
+
+    /**
+     * 获取商品的分段数（本地配置），未启用分段时返回1
+     */
+    public int getSegmentCount(Long productId) {
+        return segmentCounts.getOrDefault(productId, 1);
+    }
+
+    /**
+     * 从Redis库存键读取商品的分段数，未分段或不存在时返回0
+     */
+    private int readSegmentCount(Long productId) {
+        String value = redissonClient.<String>getBucket(stockKey(productId), StringCodec.INSTANCE).get();
+        return value != null ? parseSegmentCount(value) : 0;
+    }
+
+    /**
+     * 执行单个商品的库存脚本，本地分段配置与Redis不一致时按脚本返回的分段数重试
+     */
+    private List<Long> evalWithSegments(Long productId, String lua, boolean withStream, Object... args) {
+        RScript script = redissonClient.getScript(StringCodec.INSTANCE);
+        for (int attempt = 1; ; attempt++) {
+            int segments = getSegmentCount(productId);
+            List<Object> keys = stockKeys(productId, segments > 1 ? segments : 0);
+            if (withStream) {
+                keys.add(STOCK_CHANGE_STREAM);
+            }
+            List<Long> reply = script.eval(RScript.Mode.READ_WRITE, lua, RScript.ReturnType.MULTI, keys, args);
+            if (reply.get(0) != SEGMENTS_CHANGED) {
+                return reply;
+            }
+            updateSegmentHint(productId, reply.get(1).intValue());
+            if (attempt >= MAX_SEGMENT_RETRIES) {
+                throw new RuntimeException("库存分段配置不一致，请稍后重试");
+            }
+        }
+    }
+
+    private void updateSegmentHint(Long productId, int segments) {
+        if (segments > 1) {
+            segmentCounts.put(productId, segments);
+        } else {
+            segmentCounts.remove(productId);
+        }
+    }
+
+    /**
+     * 库存键及其分段键
+     */
+    private List<Object> stockKeys(Long productId, int segments) {
+        List<Object> keys = new ArrayList<>(segments + 2);
+        keys.add(stockKey(productId));
+        for (int i = 0; i < segments; i++) {
+            keys.add(segmentKey(productId, i));
+        }
+        return keys;
+    }
+
+    /**
+     * 按用户散列选择起始分段，同一用户总是从同一分段开始，userId为null时随机
+     */
+    private static int startSegment(int segments, Long userId) {
+        return userId != null
+                ? Math.floorMod(Long.hashCode(userId * 0x9E3779B97F4A7C15L), segments)
+                : ThreadLocalRandom.current().nextInt(segments);
+    }
+
+    /**
+     * 解析库存键的值，分段标记返回分段数，普通库存返回0
+     */
+    private static int parseSegmentCount(String value) {
+        return value.startsWith(SEGMENT_MARKER_PREFIX)
+                ? Integer.parseInt(value.substring(SEGMENT_MARKER_PREFIX.length()))
+                : 0;
+    }
+
+    // 库存键与分段键带相同的哈希标签 {id}，集群模式下位于同一槽位
+    private static String stockKey(Long productId) {
+        return STOCK_PREFIX + "{" + productId + "}";
+    }
+
+    private static String segmentKey(Long productId, int segment) {
+        return stockKey(productId) + ":" + segment;
     }
 
     /**
@@ -168,4 +771,34 @@ public class RedissonStockService {
         Integer currentStock = getStock(productId);
         return currentStock != null && currentStock >= quantity;
     }
+
+    /**
+     * 批量扣减结果
+     */
+    public static class StockDeductResult {
+        private long code;                  // 0成功，-1库存不存在，-2库存不足
+        private Long failedProductId;       // 失败的商品ID
+        private Map<Long, Long> remaining;  // 成功时各商品扣减后的库存
+        
+        private StockDeductResult(long code, Long failedProductId, Map<Long, Long> remaining) {
+            this.code = code;
+            this.failedProductId = failedProductId;
+            this.remaining = remaining;
+        }
+        
+        public static StockDeductResult success(Map<Long, Long> remaining) {
+            return new StockDeductResult(0, null, remaining);
+        }
+        
+        public static StockDeductResult failure(long code, Long failedProductId) {
+            return new StockDeductResult(code, failedProductId, Collections.emptyMap());
+        }
+        
+        public boolean isSuccess() { return code == 0; }
+        
+        // Getters
+        public long getCode() { return code; }
+        public Long getFailedProductId() { return failedProductId; }
+        public Map<Long, Long> getRemaining() { return remaining; }
+    }
 }
\ No newline at end of file
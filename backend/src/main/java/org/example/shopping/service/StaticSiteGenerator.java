@@ -0,0 +1,433 @@
+package org.example.startup.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.startup.dto.PageResponse;
+import org.example.startup.dto.ProductSummary;
+import org.example.startup.model.Product;
+import org.example.startup.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 商品静态页生成
+ * 将每个商品详情和目录分页渲染为 HTML+JSON 文件写入输出目录，由Nginx/CDN直接对外提供，匿名浏览不再经过应用服务器。
+ * 以商品的 updated_at 作为版本，清单文件记录上次生成时各商品的版本，每次只重新生成版本变化的商品，
+ * 并删除已下架商品的文件。商品保存/删除后标记待生成，由定时任务合并触发。
+ * 渲染在有界线程池中并行执行，内容未变化的文件不重写，避免CDN缓存无谓失效。
+ */
+@Service
+public class StaticSiteGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(StaticSiteGenerator.class);
+
+    private static final String MANIFEST_FILE = "manifest.json";
+    private static final List<String> CATALOG_SORTS = Arrays.asList("popularity", "price");
+    // 不写入商品静态页的字段
+    private static final List<String> VOLATILE_FIELDS = Arrays.asList("stock", "popularity");
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 默认关闭，集群中只需一个节点负责生成
+    @Value("${ssg.enabled:false}")
+    private boolean enabled;
+
+    @Value("${ssg.output-dir:static}")
+    private String outputDir;
+
+    // 渲染线程数，0表示使用CPU核数
+    @Value("${ssg.threads:0}")
+    private int threads;
+
+    @Value("${ssg.queue-capacity:256}")
+    private int queueCapacity;
+
+    // 每次从数据库加载的商品数
+    @Value("${ssg.batch-size:200}")
+    private int batchSize;
+
+    @Value("${ssg.catalog.page-size:8}")
+    private int catalogPageSize;
+
+    // 没有商品变更时，每隔该时间仍全量比对一次版本，以发现其他节点或直接改库造成的变化
+    @Value("${ssg.full-scan-interval-ms:300000}")
+    private long fullScanIntervalMillis;
+
+    private Path root;
+    private ThreadPoolExecutor executor;
+
+    // 商品ID -> 上次生成时的版本
+    private final Map<Long, Long> manifest = new ConcurrentHashMap<>();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private volatile long lastScanAt;
+
+    // 统计信息
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong removed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile long lastDurationMillis;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        root = Paths.get(outputDir).toAbsolutePath().normalize();
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger seq = new AtomicInteger();
+        // 队列满时由提交线程自己渲染，形成背压而不是无限堆积任务
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ssg-render-" + seq.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        loadManifest();
+        logger.info("静态页生成已启用，输出目录: {}，渲染线程数: {}", root, poolSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 标记商品需要重新生成（商品保存或删除后调用）
+     */
+    public void markDirty(Long productId) {
+        if (enabled && productId != null) {
+            dirty.add(productId);
+        }
+    }
+
+    /**
+     * 定时检查是否需要生成：有待生成商品或到达全量比对间隔时执行一次增量生成
+     */
+    @Scheduled(fixedDelayString = "${ssg.interval-ms:5000}")
+    public void generateScheduled() {
+        if (!enabled) {
+            return;
+        }
+        if (dirty.isEmpty() && System.currentTimeMillis() - lastScanAt < fullScanIntervalMillis) {
+            return;
+        }
+        try {
+            generate();
+        } catch (Exception e) {
+            logger.error("生成静态页失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 增量生成：只渲染版本变化或被标记的商品，删除已不存在的商品，有变化时重新生成目录页
+     */
+    public synchronized void generate() throws IOException {
+        long start = System.currentTimeMillis();
+        lastScanAt = start;
+        Set<Long> forced = new HashSet<>(dirty);
+        dirty.removeAll(forced);
+
+        Map<Long, Long> versions = new HashMap<>();
+        for (Object[] row : productRepository.findAllVersions()) {
+            Long id = (Long) row[0];
+            LocalDateTime updatedAt = (LocalDateTime) row[1];
+            versions.put(id, updatedAt != null ? updatedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : 0L);
+        }
+
+        List<Long> changed = new ArrayList<>();
+        for (Map.Entry<Long, Long> entry : versions.entrySet()) {
+            if (forced.contains(entry.getKey()) || !entry.getValue().equals(manifest.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        List<Long> deleted = new ArrayList<>();
+        for (Long id : manifest.keySet()) {
+            if (!versions.containsKey(id)) {
+                deleted.add(id);
+            }
+        }
+        if (changed.isEmpty() && deleted.isEmpty()) {
+            return;
+        }
+
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < changed.size(); i += batchSize) {
+            List<Long> chunk = changed.subList(i, Math.min(i + batchSize, changed.size()));
+            for (Product product : productRepository.findAllById(chunk)) {
+                long version = versions.get(product.getId());
+                tasks.add(CompletableFuture.runAsync(() -> renderProduct(product, version), executor));
+            }
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
+
+        for (Long id : deleted) {
+            deleteQuietly(root.resolve("products").resolve(id + ".json"));
+            deleteQuietly(root.resolve("products").resolve(String.valueOf(id)).resolve("index.html"));
+            deleteQuietly(root.resolve("products").resolve(String.valueOf(id)));
+            manifest.remove(id);
+            removed.incrementAndGet();
+        }
+
+        renderCatalog();
+        saveManifest();
+
+        runs.incrementAndGet();
+        lastDurationMillis = System.currentTimeMillis() - start;
+        logger.info("静态页增量生成完成，渲染 {} 个商品，删除 {} 个商品，耗时 {} ms",
+                changed.size(), deleted.size(), lastDurationMillis);
+    }
+
+    /**
+     * 获取静态页生成统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("outputDir", root != null ? root.toString() : outputDir);
+        stats.put("products", manifest.size());
+        stats.put("pending", dirty.size());
+        stats.put("runs", runs.get());
+        stats.put("generated", generated.get());
+        stats.put("removed", removed.get());
+        stats.put("failed", failed.get());
+        stats.put("lastDurationMs", lastDurationMillis);
+        if (executor != null) {
+            stats.put("queueDepth", executor.getQueue().size());
+        }
+        return stats;
+    }
+
+    private void renderProduct(Product product, long version) {
+        try {
+            Path dir = root.resolve("products");
+            // 库存和人气按SQL更新，不改变 updated_at，写入静态页会一直停留在生成时的值；由页面运行时读取库存接口
+            ObjectNode node = objectMapper.valueToTree(product);
+            node.remove(VOLATILE_FIELDS);
+            String json = objectMapper.writeValueAsString(node);
+            writeIfChanged(dir.resolve(product.getId() + ".json"), json);
+            writeIfChanged(dir.resolve(String.valueOf(product.getId())).resolve("index.html"),
+                    renderProductHtml(product, json));
+            manifest.put(product.getId(), version);
+            generated.incrementAndGet();
+        } catch (Exception e) {
+            // 不写入清单，下次生成时重试
+            failed.incrementAndGet();
+            logger.warn("生成商品静态页失败, productId: {}, 错误: {}", product.getId(), e.getMessage());
+        }
+    }
+
+    private void renderCatalog() throws IOException {
+        List<ProductSummary> summaries = productRepository.findAllSummaries();
+        int total = summaries.size();
+        int totalPages = Math.max((total + catalogPageSize - 1) / catalogPageSize, 1);
+
+        for (String sort : CATALOG_SORTS) {
+            List<ProductSummary> sorted = new ArrayList<>(summaries);
+            sorted.sort(comparator(sort));
+            Path dir = root.resolve("catalog").resolve(sort);
+            for (int page = 0; page < totalPages; page++) {
+                List<ProductSummary> content = sorted.subList(Math.min(page * catalogPageSize, total),
+                        Math.min((page + 1) * catalogPageSize, total));
+                PageResponse<ProductSummary> pageResponse =
+                        new PageResponse<>(content, totalPages, total, catalogPageSize, page);
+                String json = objectMapper.writeValueAsString(pageResponse);
+                writeIfChanged(dir.resolve("page-" + page + ".json"), json);
+                writeIfChanged(dir.resolve("page-" + page + ".html"), renderCatalogHtml(sort, pageResponse, json));
+            }
+            // 删除商品减少导致多出来的分页
+            for (int page = totalPages; Files.exists(dir.resolve("page-" + page + ".json")); page++) {
+                deleteQuietly(dir.resolve("page-" + page + ".json"));
+                deleteQuietly(dir.resolve("page-" + page + ".html"));
+            }
+        }
+    }
+
+    private Comparator<ProductSummary> comparator(String sort) {
+        if ("price".equals(sort)) {
+            return Comparator.comparing(ProductSummary::price).thenComparing(ProductSummary::id);
+        }
+        Comparator<ProductSummary> byPopularity = Comparator.comparing(
+                summary -> summary.popularity() != null ? summary.popularity() : 0);
+        return byPopularity.thenComparing(ProductSummary::id).reversed();
+    }
+
+    private String renderProductHtml(Product product, String json) {
+        StringBuilder html = new StringBuilder(1024 + json.length());
+        html.append("<!DOCTYPE html>\n<html lang=\"zh-CN\">\n<head>\n<meta charset=\"UTF-8\">\n")
+            .append("<meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">\n")
+            .append("<title>").append(escape(product.getName())).append("</title>\n")
+            .append("<meta name=\"description\" content=\"").append(escape(abbreviate(product.getDescription()))).append("\">\n")
+            .append("<link rel=\"canonical\" href=\"/products/").append(product.getId()).append("\">\n")
+            .append("</head>\n<body>\n<main class=\"product-detail\">\n");
+        if (product.getImageUrl() != null) {
+            html.append("<img src=\"").append(escape(product.getImageUrl())).append("\" alt=\"")
+                .append(escape(product.getName())).append("\">\n");
+        }
+        html.append("<h1>").append(escape(product.getName())).append("</h1>\n")
+            .append("<p class=\"price\">¥").append(product.getPrice() != null ? product.getPrice().toPlainString() : "").append("</p>\n")
+            .append("<p class=\"description\">").append(escape(product.getDescription())).append("</p>\n")
+            .append("<p class=\"stock\" id=\"ssg-stock\"></p>\n")
+            .append("</main>\n");
+        appendStockLoader(html, product.getId());
+        appendData(html, json);
+        html.append("</body>\n</html>\n");
+        return html.toString();
+    }
+
+    private String renderCatalogHtml(String sort, PageResponse<ProductSummary> page, String json) {
+        StringBuilder html = new StringBuilder(4096 + json.length());
+        html.append("<!DOCTYPE html>\n<html lang=\"zh-CN\">\n<head>\n<meta charset=\"UTF-8\">\n")
+            .append("<meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">\n")
+            .append("<title>商品列表 - 第").append(page.getNumber() + 1).append("页</title>\n")
+            .append("</head>\n<body>\n<main class=\"product-list\">\n<ul>\n");
+        for (ProductSummary summary : page.getContent()) {
+            html.append("<li><a href=\"/products/").append(summary.id()).append("\">")
+                .append(escape(summary.name())).append("</a> ¥").append(summary.price().toPlainString()).append("</li>\n");
+        }
+        html.append("</ul>\n<nav>\n");
+        if (page.getNumber() > 0) {
+            html.append("<a rel=\"prev\" href=\"page-").append(page.getNumber() - 1).append(".html\">上一页</a>\n");
+        }
+        if (page.getNumber() + 1 < page.getTotalPages()) {
+            html.append("<a rel=\"next\" href=\"page-").append(page.getNumber() + 1).append(".html\">下一页</a>\n");
+        }
+        html.append("</nav>\n</main>\n");
+        appendData(html, json);
+        html.append("</body>\n</html>\n");
+        return html.toString();
+    }
+
+    /**
+     * 页面加载后从库存接口读取实时库存
+     */
+    private void appendStockLoader(StringBuilder html, Long productId) {
+        html.append("<script>fetch('/api/products/").append(productId).append("/stock')")
+            .append(".then(function(r){return r.ok?r.json():null;})")
+            .append(".then(function(d){if(d){document.getElementById('ssg-stock').textContent=")
+            .append("d.stock>0?'库存 '+d.stock:'已售罄';}});</script>\n");
+    }
+
+    /**
+     * 内嵌页面数据，前端可直接读取而无需再请求接口
+     */
+    private void appendData(StringBuilder html, String json) {
+        html.append("<script id=\"ssg-data\" type=\"application/json\">")
+            .append(json.replace("</", "<\\/"))
+            .append("</script>\n");
+    }
+
+    private String abbreviate(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.length() > 150 ? text.substring(0, 150) : text;
+    }
+
+    private String escape(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder escaped = new StringBuilder(text.length() + 16);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<': escaped.append("&lt;"); break;
+                case '>': escaped.append("&gt;"); break;
+                case '&': escaped.append("&amp;"); break;
+                case '"': escaped.append("&quot;"); break;
+                case '\'': escaped.append("&#39;"); break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * 内容变化时才写入，先写临时文件再原子替换，Nginx不会读到写了一半的文件
+     */
+    private void writeIfChanged(Path file, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        if (Files.exists(file) && Arrays.equals(Files.readAllBytes(file), bytes)) {
+            return;
+        }
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.getParent(), ".ssg-", ".tmp");
+        try {
+            Files.write(tmp, bytes);
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("删除静态文件失败: {}, 错误: {}", path, e.getMessage());
+        }
+    }
+
+    private void loadManifest() {
+        Path file = root.resolve(MANIFEST_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            Map<Long, Long> saved = objectMapper.readValue(file.toFile(), new TypeReference<Map<Long, Long>>() {});
+            manifest.putAll(saved);
+        } catch (IOException e) {
+            logger.warn("读取静态页清单失败，将全量生成: {}", e.getMessage());
+        }
+    }
+
+    private void saveManifest() throws IOException {
+        writeIfChanged(root.resolve(MANIFEST_FILE), objectMapper.writeValueAsString(new HashMap<>(manifest)));
+    }
+}
@@ -0,0 +1,176 @@
+package org.example.startup.service;
+
+import jakarta.annotation.PostConstruct;
+import org.example.startup.util.LocalCache;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 库存近端缓存
+ * 在进程内缓存短TTL的库存值，并维护一个售罄位图。库存归零/恢复时通过Redis发布订阅
+ * 通知所有节点，售罄商品的查询无需任何网络往返即可直接拒绝。
+ */
+@Component
+public class StockNearCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockNearCache.class);
+
+    /**
+     * 库存事件频道，消息格式为 soldout:{id} 或 available:{id}
+     */
+    public static final String STOCK_EVENT_CHANNEL = "stock:events";
+    public static final String SOLD_OUT_EVENT = "soldout:";
+    public static final String AVAILABLE_EVENT = "available:";
+
+    // 售罄位图覆盖的最大商品ID，超出范围的商品不做售罄标记
+    private static final int MAX_BITMAP_ID = 1 << 24;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Value("${stock.near-cache.ttl-ms:500}")
+    private long ttlMillis;
+
+    @Value("${stock.near-cache.max-size:10000}")
+    private int maxSize;
+
+    private LocalCache<Long, Integer> stockCache;
+
+    // 售罄位图，扩容时整体替换，读取无锁
+    private volatile AtomicLongArray soldOutBits = new AtomicLongArray(1024);
+
+    @PostConstruct
+    public void init() {
+        stockCache = new LocalCache<>(maxSize, ttlMillis);
+        try {
+            RTopic topic = redissonClient.getTopic(STOCK_EVENT_CHANNEL, StringCodec.INSTANCE);
+            topic.addListener(String.class, (channel, message) -> onStockEvent(message));
+        } catch (Exception e) {
+            logger.warn("订阅库存事件失败，近端缓存仅依赖TTL失效: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 商品是否已售罄（本地判断，无网络往返）
+     */
+    public boolean isSoldOut(Long productId) {
+        if (productId == null || productId < 0 || productId >= MAX_BITMAP_ID) {
+            return false;
+        }
+        AtomicLongArray bits = soldOutBits;
+        int word = (int) (productId >>> 6);
+        return word < bits.length() && (bits.get(word) & (1L << productId)) != 0;
+    }
+
+    /**
+     * 获取缓存的库存，未命中返回null
+     */
+    public Integer get(Long productId) {
+        return stockCache.get(productId);
+    }
+
+    /**
+     * 写入最新库存，库存为0时同时标记售罄
+     */
+    public void put(Long productId, int stock) {
+        stockCache.put(productId, stock);
+        if (stock <= 0) {
+            markSoldOut(productId);
+        }
+    }
+
+    /**
+     * 使本地缓存的库存失效（售罄标记保留，由 available 事件清除）
+     */
+    public void invalidate(Long productId) {
+        stockCache.invalidate(productId);
+    }
+
+    /**
+     * 处理其他节点（或Lua脚本）发布的库存事件
+     */
+    void onStockEvent(String message) {
+        try {
+            if (message.startsWith(SOLD_OUT_EVENT)) {
+                Long productId = Long.valueOf(message.substring(SOLD_OUT_EVENT.length()));
+                stockCache.put(productId, 0);
+                markSoldOut(productId);
+            } else if (message.startsWith(AVAILABLE_EVENT)) {
+                markAvailable(Long.valueOf(message.substring(AVAILABLE_EVENT.length())));
+            }
+        } catch (NumberFormatException e) {
+            logger.warn("无法解析库存事件: {}", message);
+        }
+    }
+
+    /**
+     * 定期清空售罄位图作为兜底，防止遗漏 available 事件时商品一直被误判为售罄
+     */
+    @Scheduled(fixedDelayString = "${stock.near-cache.sold-out-reset-ms:60000}")
+    public synchronized void resetSoldOut() {
+        soldOutBits = new AtomicLongArray(soldOutBits.length());
+    }
+
+    /**
+     * 获取近端缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(stockCache.getStats());
+        AtomicLongArray bits = soldOutBits;
+        int soldOut = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            soldOut += Long.bitCount(bits.get(i));
+        }
+        stats.put("soldOutProducts", soldOut);
+        return stats;
+    }
+
+    // 与扩容、重置互斥，避免置位落在已被替换的旧数组上
+    synchronized void markSoldOut(Long productId) {
+        if (productId == null || productId < 0 || productId >= MAX_BITMAP_ID) {
+            return;
+        }
+        int word = (int) (productId >>> 6);
+        ensureCapacity(word);
+        soldOutBits.getAndUpdate(word, bits -> bits | (1L << productId));
+    }
+
+    synchronized void markAvailable(Long productId) {
+        stockCache.invalidate(productId);
+        if (productId == null || productId < 0 || productId >= MAX_BITMAP_ID) {
+            return;
+        }
+        AtomicLongArray bits = soldOutBits;
+        int word = (int) (productId >>> 6);
+        if (word < bits.length()) {
+            bits.getAndUpdate(word, value -> value & ~(1L << productId));
+        }
+    }
+
+    private synchronized void ensureCapacity(int word) {
+        AtomicLongArray bits = soldOutBits;
+        if (word < bits.length()) {
+            return;
+        }
+        int newLength = bits.length();
+        while (newLength <= word) {
+            newLength <<= 1;
+        }
+        AtomicLongArray grown = new AtomicLongArray(newLength);
+        for (int i = 0; i < bits.length(); i++) {
+            grown.set(i, bits.get(i));
+        }
+        soldOutBits = grown;
+    }
+}
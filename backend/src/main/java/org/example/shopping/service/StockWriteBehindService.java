@@ -0,0 +1,208 @@
+package org.example.startup.service;
+
+import jakarta.annotation.PostConstruct;
+import org.redisson.api.RBatch;
+import org.redisson.api.RStream;
+import org.redisson.api.RStreamAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.StreamMessageId;
+import org.redisson.api.stream.StreamCreateGroupArgs;
+import org.redisson.api.stream.StreamReadGroupArgs;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 库存异步落库（write-behind）
+ * 扣减库存时由Lua脚本向库存变更流写入商品ID，本服务定时消费变更流，
+ * 按商品合并后读取Redis中的最新库存，通过JDBC批量更新products.stock。
+ * 消息在落库成功后才确认，进程崩溃后重启会先重放未确认的消息。
+ */
+@Service
+public class StockWriteBehindService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockWriteBehindService.class);
+
+    private static final String CONSUMER_GROUP = "stock-flusher";
+    private static final String UPDATE_STOCK_SQL = "UPDATE products SET stock = ? WHERE id = ?";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private RedissonStockService redissonStockService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 每批最多消费的变更消息数
+    @Value("${stock.write-behind.batch-size:500}")
+    private int batchSize;
+
+    // 消费者名称，每个实例必须不同；为空时使用主机名和进程号
+    @Value("${stock.write-behind.consumer:}")
+    private String consumerName;
+
+    // 其他消费者（如已下线的实例）未确认的消息空闲超过该时间后由本实例接管
+    @Value("${stock.write-behind.claim-idle-ms:60000}")
+    private long claimIdleMillis;
+
+    // 统计信息
+    private final AtomicLong totalFlushedProducts = new AtomicLong();
+    private final AtomicLong totalConsumedMessages = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private volatile int lastBatchProducts;
+    private volatile int lastBatchMessages;
+    private volatile long lastLagMillis;
+    private volatile long lastFlushAt;
+
+    private volatile boolean groupReady;
+
+    @PostConstruct
+    public void init() {
+        if (!StringUtils.hasText(consumerName)) {
+            consumerName = defaultConsumerName();
+        }
+        try {
+            getStream().createGroup(StreamCreateGroupArgs.name(CONSUMER_GROUP).id(StreamMessageId.ALL).makeStream());
+            groupReady = true;
+        } catch (Exception e) {
+            if (e.getMessage() != null && e.getMessage().contains("BUSYGROUP")) {
+                // 消费组已存在
+                groupReady = true;
+            } else {
+                logger.warn("创建库存变更流消费组失败，将在下次落库时重试: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 定时将库存变更批量落库
+     */
+    @Scheduled(fixedDelayString = "${stock.write-behind.flush-interval-ms:1000}")
+    public void flush() {
+        if (!groupReady) {
+            init();
+            if (!groupReady) {
+                return;
+            }
+        }
+        try {
+            RStream<String, String> stream = getStream();
+
+            // 先重放本消费者已读取但未确认的消息（崩溃恢复或上次落库失败），不足一批时再读取新消息，
+            // 个别商品的消息长期无法确认时也不会阻塞其他商品落库
+            Map<StreamMessageId, Map<String, String>> messages = new LinkedHashMap<>(stream.readGroup(CONSUMER_GROUP,
+                    consumerName, StreamReadGroupArgs.greaterThan(StreamMessageId.ALL).count(batchSize)));
+            if (messages.size() < batchSize) {
+                messages.putAll(stream.readGroup(CONSUMER_GROUP, consumerName,
+                        StreamReadGroupArgs.neverDelivered().count(batchSize - messages.size())));
+            }
+            if (messages.size() < batchSize) {
+                messages.putAll(stream.autoClaim(CONSUMER_GROUP, consumerName, claimIdleMillis, TimeUnit.MILLISECONDS,
+                        StreamMessageId.MIN, batchSize - messages.size()).getMessages());
+            }
+            if (messages.isEmpty()) {
+                lastLagMillis = 0;
+                return;
+            }
+
+            // 按商品合并，同一商品只写一次最新库存
+            Set<Long> productIds = new LinkedHashSet<>();
+            long oldestMillis = Long.MAX_VALUE;
+            for (Map.Entry<StreamMessageId, Map<String, String>> entry : messages.entrySet()) {
+                String productId = entry.getValue().get(RedissonStockService.STOCK_CHANGE_FIELD);
+                if (productId != null) {
+                    productIds.add(Long.valueOf(productId));
+                }
+                oldestMillis = Math.min(oldestMillis, entry.getKey().getId0());
+            }
+
+            // 分段不完整的商品总库存未知，不落库，其消息也不确认
+            Set<Long> incomplete = new HashSet<>();
+            Map<Long, Integer> stocks = redissonStockService.getStocks(productIds, incomplete);
+            List<Object[]> batchArgs = new ArrayList<>(stocks.size());
+            for (Map.Entry<Long, Integer> entry : stocks.entrySet()) {
+                batchArgs.add(new Object[]{entry.getValue(), entry.getKey()});
+            }
+            if (!batchArgs.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPDATE_STOCK_SQL, batchArgs);
+            }
+
+            // 落库成功后确认并删除消息
+            List<StreamMessageId> acked = new ArrayList<>(messages.size());
+            for (Map.Entry<StreamMessageId, Map<String, String>> entry : messages.entrySet()) {
+                String productId = entry.getValue().get(RedissonStockService.STOCK_CHANGE_FIELD);
+                if (productId == null || !incomplete.contains(Long.valueOf(productId))) {
+                    acked.add(entry.getKey());
+                }
+            }
+            if (acked.isEmpty()) {
+                return;
+            }
+            StreamMessageId[] ids = acked.toArray(new StreamMessageId[0]);
+            RBatch batch = redissonClient.createBatch();
+            RStreamAsync<String, String> batchStream = batch.getStream(RedissonStockService.STOCK_CHANGE_STREAM, StringCodec.INSTANCE);
+            batchStream.ackAsync(CONSUMER_GROUP, ids);
+            batchStream.removeAsync(ids);
+            batch.execute();
+
+            lastBatchProducts = batchArgs.size();
+            lastBatchMessages = messages.size();
+            lastLagMillis = System.currentTimeMillis() - oldestMillis;
+            lastFlushAt = System.currentTimeMillis();
+            totalFlushedProducts.addAndGet(batchArgs.size());
+            totalConsumedMessages.addAndGet(messages.size());
+        } catch (Exception e) {
+            failedFlushes.incrementAndGet();
+            logger.error("库存异步落库失败，将在下次重试: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 获取异步落库统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pendingMessages", getStream().size());
+        stats.put("lastLagMillis", lastLagMillis);
+        stats.put("lastBatchProducts", lastBatchProducts);
+        stats.put("lastBatchMessages", lastBatchMessages);
+        stats.put("lastFlushAt", lastFlushAt);
+        stats.put("totalFlushedProducts", totalFlushedProducts.get());
+        stats.put("totalConsumedMessages", totalConsumedMessages.get());
+        stats.put("failedFlushes", failedFlushes.get());
+        return stats;
+    }
+
+    private static String defaultConsumerName() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+
+    private RStream<String, String> getStream() {
+        return redissonClient.getStream(RedissonStockService.STOCK_CHANGE_STREAM, StringCodec.INSTANCE);
+    }
+}
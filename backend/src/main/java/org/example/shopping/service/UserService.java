@@ -8,6 +8,7 @@ import org.example.startup.util.JwtUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
@@ -27,8 +28,16 @@ public class UserService {
     @Autowired
     private JwtUtil jwtUtil;
     
+    @Autowired
+    private LastLoginRecorder lastLoginRecorder;
+    
     private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
     
+    /**
+     * 校验用户名和密码，由 LoginService 的登录线程池调用
+     * 不开启事务，BCrypt 校验期间不占用数据库连接；角色和权限为急加载，返回的用户可直接生成令牌
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public User login(String username, String password) {
         try {
             User user = userRepository.findByUsername(username);
@@ -40,9 +49,10 @@ public class UserService {
             }
             
             if (passwordEncoder.matches(password, user.getPassword())) {
-                // 更新最后登录时间
-                user.setLastLogin(LocalDateTime.now());
-                userRepository.save(user);
+                // 最后登录时间合并后批量写入
+                LocalDateTime now = LocalDateTime.now();
+                user.setLastLogin(now);
+                lastLoginRecorder.record(user.getId(), now);
                 
                 // 调试：检查用户角色信息
                 return user;
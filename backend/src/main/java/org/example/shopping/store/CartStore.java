@@ -0,0 +1,50 @@
+package org.example.startup.store;
+
+import org.example.startup.model.CartItem;
+
+import java.util.List;
+
+/**
+ * 购物车存储
+ * 由配置项 cart.store 选择实现：redis（默认，Redis哈希为主存储并异步落库）或 jpa（直接读写cart_items表）
+ */
+public interface CartStore {
+
+    /**
+     * 获取用户购物车，按加入时间倒序；返回的购物车项可能未关联商品信息
+     */
+    List<CartItem> getItems(Long userId);
+
+    /**
+     * 原子地累加购物车商品数量（不存在则新增），累加后数量不大于0时删除该项
+     * @param unitPriceMinor 商品当前单价（分），用于增量维护购物车汇总
+     * @return 累加后的数量
+     */
+    int addQuantity(Long userId, Long productId, int delta, long unitPriceMinor);
+
+    /**
+     * 设置购物车商品数量，商品不在购物车中时返回false
+     * @param unitPriceMinor 商品当前单价（分），用于增量维护购物车汇总
+     */
+    boolean setQuantity(Long userId, Long productId, int quantity, long unitPriceMinor);
+
+    /**
+     * 从购物车删除商品，商品不在购物车中时返回false
+     */
+    boolean remove(Long userId, Long productId);
+
+    /**
+     * 清空购物车
+     */
+    void clear(Long userId);
+
+    /**
+     * 获取购物车汇总
+     */
+    CartTotals getTotals(Long userId);
+
+    /**
+     * 通知商品价格可能已变化，由实现决定是否需要校正已维护的汇总
+     */
+    void onPriceChanged(Long productId);
+}
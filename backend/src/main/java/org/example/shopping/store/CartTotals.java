@@ -0,0 +1,45 @@
+package org.example.startup.store;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 购物车汇总：商品种类数、商品总数量、总金额（以分为单位）
+ */
+public class CartTotals {
+
+    private final int totalItems;
+    private final long totalQuantity;
+    private final long totalAmountMinor;
+
+    public CartTotals(int totalItems, long totalQuantity, long totalAmountMinor) {
+        this.totalItems = totalItems;
+        this.totalQuantity = totalQuantity;
+        this.totalAmountMinor = totalAmountMinor;
+    }
+
+    /**
+     * 供JPQL构造表达式使用
+     */
+    public CartTotals(Long totalItems, Long totalQuantity, BigDecimal totalAmount) {
+        this(totalItems.intValue(), totalQuantity, toMinorUnits(totalAmount));
+    }
+
+    /**
+     * 金额转换为以分为单位的整数
+     */
+    public static long toMinorUnits(BigDecimal amount) {
+        if (amount == null) {
+            return 0L;
+        }
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public int getTotalItems() { return totalItems; }
+    public long getTotalQuantity() { return totalQuantity; }
+    public long getTotalAmountMinor() { return totalAmountMinor; }
+
+    public BigDecimal getTotalAmount() {
+        return BigDecimal.valueOf(totalAmountMinor, 2);
+    }
+}
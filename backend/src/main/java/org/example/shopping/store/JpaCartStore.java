@@ -0,0 +1,78 @@
+package org.example.startup.store;
+
+import org.example.startup.model.CartItem;
+import org.example.startup.repository.CartItemRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 基于JPA的购物车存储，直接读写cart_items表
+ */
+@Component
+@Transactional
+@ConditionalOnProperty(name = "cart.store", havingValue = "jpa")
+public class JpaCartStore implements CartStore {
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Override
+    public List<CartItem> getItems(Long userId) {
+        return cartItemRepository.findByUserIdWithProduct(userId);
+    }
+
+    @Override
+    public int addQuantity(Long userId, Long productId, int delta, long unitPriceMinor) {
+        // 依赖 (user_id, product_id) 唯一约束原子地新增或累加
+        cartItemRepository.upsertQuantity(userId, productId, delta);
+        CartItem cartItem = cartItemRepository.findByUserIdAndProductId(userId, productId)
+                .orElseThrow(() -> new RuntimeException("添加购物车失败"));
+        if (cartItem.getQuantity() <= 0) {
+            cartItemRepository.delete(cartItem);
+        }
+        return cartItem.getQuantity();
+    }
+
+    @Override
+    public boolean setQuantity(Long userId, Long productId, int quantity, long unitPriceMinor) {
+        Optional<CartItem> cartItem = cartItemRepository.findByUserIdAndProductId(userId, productId);
+        if (cartItem.isEmpty()) {
+            return false;
+        }
+        cartItem.get().setQuantity(quantity);
+        cartItemRepository.save(cartItem.get());
+        return true;
+    }
+
+    @Override
+    public boolean remove(Long userId, Long productId) {
+        Optional<CartItem> cartItem = cartItemRepository.findByUserIdAndProductId(userId, productId);
+        if (cartItem.isEmpty()) {
+            return false;
+        }
+        cartItemRepository.delete(cartItem.get());
+        return true;
+    }
+
+    @Override
+    public void clear(Long userId) {
+        cartItemRepository.deleteByUserId(userId);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public CartTotals getTotals(Long userId) {
+        // 数据库模式下由一条聚合查询计算，不加载实体
+        return cartItemRepository.sumTotalsByUserId(userId);
+    }
+
+    @Override
+    public void onPriceChanged(Long productId) {
+        // 汇总每次实时计算，无需校正
+    }
+}
@@ -0,0 +1,511 @@
+package org.example.startup.store;
+
+import org.example.startup.model.CartItem;
+import org.example.startup.model.Product;
+import org.example.startup.repository.CartItemRepository;
+import org.example.startup.repository.ProductRepository;
+import org.example.startup.service.ProductCache;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RScript;
+import org.redisson.api.RSet;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 基于Redis哈希的购物车存储
+ * 每个用户一个哈希 cart:{userId}，字段为商品ID，值为 "数量:加入时间毫秒"；
+ * 字段 "_" 为已加载标记，用于区分空购物车与尚未从数据库加载的购物车。
+ * 每次修改都会把用户ID加入脏集合，由定时任务批量写回cart_items表。
+ * 汇总哈希 cart:{userId}:summary 保存商品种类数、总数量、总金额（分）及每行单价，
+ * 与购物车在同一脚本内增量更新，读取汇总只需一次HMGET。
+ */
+@Component
+@ConditionalOnProperty(name = "cart.store", havingValue = "redis", matchIfMissing = true)
+public class RedisCartStore implements CartStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisCartStore.class);
+
+    private static final String CART_PREFIX = "cart:";
+    private static final String SUMMARY_SUFFIX = ":summary";
+    private static final String DIRTY_SET_KEY = "cart:dirty";
+    // 价格可能已变化、需要校正购物车汇总的商品
+    private static final String PRICE_CHANGED_KEY = "cart:price-changed";
+    private static final String LOADED_FIELD = "_";
+
+    private static final String DELETE_USER_SQL = "DELETE FROM cart_items WHERE user_id = ?";
+    // 通过关联products表跳过已被删除的商品，避免外键约束导致整批失败
+    private static final String INSERT_ITEM_SQL =
+            "INSERT INTO cart_items (user_id, product_id, quantity, created_at, updated_at) " +
+            "SELECT ?, id, ?, ?, NOW() FROM products WHERE id = ?";
+
+    /**
+     * 修改脚本的公共部分：解析数量、增量维护汇总、续期并标记待落库
+     * KEYS[1] 购物车，KEYS[2] 脏集合，KEYS[3] 汇总；
+     * ARGV[1] 商品ID，ARGV[2] 数量/增量，ARGV[3] 当前时间，ARGV[4] 过期时间（秒），ARGV[5] 用户ID，ARGV[6] 单价（分）
+     * 购物车或汇总不存在时返回 {0}，由调用方加载后重试
+     */
+    private static final String MUTATE_PRELUDE =
+            "local function qtyOf(value) " +
+            "  if not value then return 0 end " +
+            "  return tonumber(string.sub(value, 1, string.find(value, ':') - 1)) " +
+            "end " +
+            "local function applyLine(oldQty, newQty, price) " +
+            "  local field = 'p:' .. ARGV[1] " +
+            "  local oldPrice = tonumber(redis.call('hget', KEYS[3], field) or '0') " +
+            "  if not price then price = oldPrice end " +
+            "  local items = 0 " +
+            "  if oldQty == 0 and newQty > 0 then items = 1 elseif oldQty > 0 and newQty == 0 then items = -1 end " +
+            "  redis.call('hincrby', KEYS[3], 'items', items) " +
+            "  redis.call('hincrby', KEYS[3], 'qty', newQty - oldQty) " +
+            "  redis.call('hincrby', KEYS[3], 'amount', string.format('%d', newQty * price - oldQty * oldPrice)) " +
+            "  if newQty > 0 then " +
+            "    redis.call('hset', KEYS[3], field, string.format('%d', price)) " +
+            "  else " +
+            "    redis.call('hdel', KEYS[3], field) " +
+            "  end " +
+            "end " +
+            "local function touch() " +
+            "  redis.call('expire', KEYS[1], ARGV[4]) " +
+            "  redis.call('expire', KEYS[3], ARGV[4]) " +
+            "  redis.call('sadd', KEYS[2], ARGV[5]) " +
+            "end " +
+            "if redis.call('exists', KEYS[1]) == 0 or redis.call('exists', KEYS[3]) == 0 then return {0} end ";
+
+    /**
+     * 累加数量的Lua脚本，返回值：{1, 累加后数量}
+     */
+    private static final String ADD_SCRIPT = MUTATE_PRELUDE +
+            "local current = redis.call('hget', KEYS[1], ARGV[1]) " +
+            "local oldQty = qtyOf(current) " +
+            "local quantity = oldQty + tonumber(ARGV[2]) " +
+            "local created = ARGV[3] " +
+            "if current then created = string.sub(current, string.find(current, ':') + 1) end " +
+            "if quantity > 0 then " +
+            "  redis.call('hset', KEYS[1], ARGV[1], quantity .. ':' .. created) " +
+            "  applyLine(oldQty, quantity, tonumber(ARGV[6])) " +
+            "else " +
+            "  redis.call('hdel', KEYS[1], ARGV[1]) " +
+            "  applyLine(oldQty, 0, nil) " +
+            "end " +
+            "touch() " +
+            "return {1, quantity}";
+
+    /**
+     * 设置数量的Lua脚本，返回值：{1, 0} 商品不在购物车中，{1, 1} 成功
+     */
+    private static final String SET_SCRIPT = MUTATE_PRELUDE +
+            "local current = redis.call('hget', KEYS[1], ARGV[1]) " +
+            "if not current then return {1, 0} end " +
+            "local quantity = tonumber(ARGV[2]) " +
+            "redis.call('hset', KEYS[1], ARGV[1], quantity .. ':' .. string.sub(current, string.find(current, ':') + 1)) " +
+            "applyLine(qtyOf(current), quantity, tonumber(ARGV[6])) " +
+            "touch() " +
+            "return {1, 1}";
+
+    /**
+     * 删除商品的Lua脚本，返回值：{1, 0} 商品不在购物车中，{1, 1} 成功
+     */
+    private static final String REMOVE_SCRIPT = MUTATE_PRELUDE +
+            "local current = redis.call('hget', KEYS[1], ARGV[1]) " +
+            "if not current then return {1, 0} end " +
+            "redis.call('hdel', KEYS[1], ARGV[1]) " +
+            "applyLine(qtyOf(current), 0, nil) " +
+            "touch() " +
+            "return {1, 1}";
+
+    /**
+     * 清空购物车的Lua脚本，保留已加载标记并将汇总归零
+     * KEYS[1] 购物车，KEYS[2] 脏集合，KEYS[3] 汇总；ARGV[1] 过期时间（秒），ARGV[2] 用户ID
+     */
+    private static final String CLEAR_SCRIPT =
+            "redis.call('del', KEYS[1], KEYS[3]) " +
+            "redis.call('hset', KEYS[1], '" + LOADED_FIELD + "', '1') " +
+            "redis.call('hset', KEYS[3], 'items', 0, 'qty', 0, 'amount', 0) " +
+            "redis.call('expire', KEYS[1], ARGV[1]) " +
+            "redis.call('expire', KEYS[3], ARGV[1]) " +
+            "redis.call('sadd', KEYS[2], ARGV[2]) " +
+            "return 1";
+
+    /**
+     * 加载购物车的Lua脚本：购物车不存在时写入数据库中的数据（同时丢弃残留的汇总），汇总不存在时按传入单价重建
+     * KEYS[1] 购物车，KEYS[2] 汇总；ARGV[1] 过期时间（秒），ARGV[2..] 商品ID/值/单价三元组
+     */
+    private static final String LOAD_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 0 then " +
+            "  redis.call('del', KEYS[2]) " +
+            "  redis.call('hset', KEYS[1], '" + LOADED_FIELD + "', '1') " +
+            "  for i = 2, #ARGV, 3 do redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "end " +
+            "if redis.call('exists', KEYS[2]) == 0 then " +
+            "  local prices = {} " +
+            "  for i = 2, #ARGV, 3 do prices[ARGV[i]] = tonumber(ARGV[i + 2]) end " +
+            "  local items, qty, amount = 0, 0, 0 " +
+            "  local fields = redis.call('hgetall', KEYS[1]) " +
+            "  for i = 1, #fields, 2 do " +
+            "    if fields[i] ~= '" + LOADED_FIELD + "' then " +
+            "      local q = tonumber(string.sub(fields[i + 1], 1, string.find(fields[i + 1], ':') - 1)) " +
+            "      local p = prices[fields[i]] or 0 " +
+            "      items = items + 1 " +
+            "      qty = qty + q " +
+            "      amount = amount + q * p " +
+            "      redis.call('hset', KEYS[2], 'p:' .. fields[i], string.format('%d', p)) " +
+            "    end " +
+            "  end " +
+            "  redis.call('hset', KEYS[2], 'items', items, 'qty', qty, 'amount', string.format('%d', amount)) " +
+            "end " +
+            "redis.call('expire', KEYS[1], ARGV[1]) " +
+            "redis.call('expire', KEYS[2], ARGV[1]) " +
+            "return 1";
+
+    /**
+     * 按最新单价校正汇总的Lua脚本
+     * KEYS[1] 购物车，KEYS[2] 汇总；ARGV 商品ID/单价（分）对
+     * 返回发生价格漂移并被校正的行数
+     */
+    private static final String REPRICE_SCRIPT =
+            "if redis.call('exists', KEYS[2]) == 0 then return 0 end " +
+            "local drifted = 0 " +
+            "for i = 1, #ARGV, 2 do " +
+            "  local field = 'p:' .. ARGV[i] " +
+            "  local oldPrice = redis.call('hget', KEYS[2], field) " +
+            "  local current = redis.call('hget', KEYS[1], ARGV[i]) " +
+            "  if oldPrice and current and oldPrice ~= ARGV[i + 1] then " +
+            "    local q = tonumber(string.sub(current, 1, string.find(current, ':') - 1)) " +
+            "    redis.call('hincrby', KEYS[2], 'amount', string.format('%d', q * (tonumber(ARGV[i + 1]) - tonumber(oldPrice)))) " +
+            "    redis.call('hset', KEYS[2], field, ARGV[i + 1]) " +
+            "    drifted = drifted + 1 " +
+            "  end " +
+            "end " +
+            "return drifted";
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // 购物车在Redis中的过期时间，过期后下次访问从数据库重新加载
+    @Value("${cart.redis.ttl-seconds:604800}")
+    private long ttlSeconds;
+
+    // 每次落库最多处理的用户数
+    @Value("${cart.redis.flush-batch-size:200}")
+    private int flushBatchSize;
+
+    // 汇总校正时每批执行的购物车数
+    @Value("${cart.summary.reconcile-batch-size:200}")
+    private int reconcileBatchSize;
+
+    @Override
+    public List<CartItem> getItems(Long userId) {
+        Map<String, String> fields = readCart(userId);
+        if (fields.isEmpty()) {
+            // 尚未加载，从数据库读取并写入Redis
+            List<CartItem> items = cartItemRepository.findByUserIdWithProduct(userId);
+            load(userId, items);
+            return items;
+        }
+        return toCartItems(userId, fields);
+    }
+
+    @Override
+    public int addQuantity(Long userId, Long productId, int delta, long unitPriceMinor) {
+        return mutate(ADD_SCRIPT, userId, productId, delta, unitPriceMinor).get(1).intValue();
+    }
+
+    @Override
+    public boolean setQuantity(Long userId, Long productId, int quantity, long unitPriceMinor) {
+        return mutate(SET_SCRIPT, userId, productId, quantity, unitPriceMinor).get(1) > 0;
+    }
+
+    @Override
+    public boolean remove(Long userId, Long productId) {
+        return mutate(REMOVE_SCRIPT, userId, productId, 0, 0L).get(1) > 0;
+    }
+
+    @Override
+    public void clear(Long userId) {
+        RScript script = redissonClient.getScript(StringCodec.INSTANCE);
+        script.eval(RScript.Mode.READ_WRITE, CLEAR_SCRIPT, RScript.ReturnType.INTEGER,
+                List.of(cartKey(userId), DIRTY_SET_KEY, summaryKey(userId)),
+                String.valueOf(ttlSeconds), String.valueOf(userId));
+    }
+
+    @Override
+    public CartTotals getTotals(Long userId) {
+        Map<String, String> summary = readSummary(userId);
+        if (summary.get("items") == null) {
+            reload(userId);
+            summary = readSummary(userId);
+        }
+        return new CartTotals(
+                Integer.parseInt(summary.getOrDefault("items", "0")),
+                Long.parseLong(summary.getOrDefault("qty", "0")),
+                Long.parseLong(summary.getOrDefault("amount", "0")));
+    }
+
+    @Override
+    public void onPriceChanged(Long productId) {
+        redissonClient.getSet(PRICE_CHANGED_KEY, StringCodec.INSTANCE).add(String.valueOf(productId));
+    }
+
+    /**
+     * 定时将有修改的购物车批量写回数据库
+     */
+    @Scheduled(fixedDelayString = "${cart.redis.flush-interval-ms:2000}")
+    public void flush() {
+        RSet<String> dirtyUsers = redissonClient.getSet(DIRTY_SET_KEY, StringCodec.INSTANCE);
+        Set<String> userIds;
+        try {
+            userIds = dirtyUsers.removeRandom(flushBatchSize);
+        } catch (Exception e) {
+            logger.error("读取待落库购物车失败: {}", e.getMessage());
+            return;
+        }
+        if (userIds.isEmpty()) {
+            return;
+        }
+
+        try {
+            // 一次往返读取所有待落库的购物车
+            RBatch batch = redissonClient.createBatch();
+            Map<Long, RFuture<Map<String, String>>> futures = new LinkedHashMap<>();
+            for (String userId : userIds) {
+                futures.put(Long.valueOf(userId),
+                        batch.<String, String>getMap(cartKey(Long.valueOf(userId)), StringCodec.INSTANCE).readAllMapAsync());
+            }
+            batch.execute();
+
+            List<Object[]> deleteArgs = new ArrayList<>();
+            List<Object[]> insertArgs = new ArrayList<>();
+            for (Map.Entry<Long, RFuture<Map<String, String>>> entry : futures.entrySet()) {
+                Map<String, String> fields = entry.getValue().toCompletableFuture().join();
+                if (fields.isEmpty()) {
+                    // 购物车已过期，数据库中的数据即为最新，不做处理
+                    continue;
+                }
+                deleteArgs.add(new Object[]{entry.getKey()});
+                for (CartItem item : toCartItems(entry.getKey(), fields)) {
+                    insertArgs.add(new Object[]{entry.getKey(), item.getQuantity(),
+                            Timestamp.valueOf(item.getCreatedAt()), item.getProductId()});
+                }
+            }
+
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!deleteArgs.isEmpty()) {
+                    jdbcTemplate.batchUpdate(DELETE_USER_SQL, deleteArgs);
+                }
+                if (!insertArgs.isEmpty()) {
+                    jdbcTemplate.batchUpdate(INSERT_ITEM_SQL, insertArgs);
+                }
+            });
+        } catch (Exception e) {
+            // 放回脏集合，下次重试
+            dirtyUsers.addAll(userIds);
+            logger.error("购物车落库失败，将在下次重试: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 定时校正因商品改价产生漂移的购物车汇总
+     * 取出改价商品的最新单价，扫描所有汇总，单价不一致的行按最新单价重新计入总金额
+     */
+    @Scheduled(fixedDelayString = "${cart.summary.reconcile-interval-ms:60000}")
+    public void reconcileSummaries() {
+        RSet<String> changed = redissonClient.getSet(PRICE_CHANGED_KEY, StringCodec.INSTANCE);
+        Set<String> productIds;
+        try {
+            productIds = changed.removeRandom(1000);
+        } catch (Exception e) {
+            logger.error("读取改价商品失败: {}", e.getMessage());
+            return;
+        }
+        if (productIds.isEmpty()) {
+            return;
+        }
+
+        try {
+            List<Object> priceArgs = new ArrayList<>(productIds.size() * 2);
+            for (Product product : productRepository.findAllById(productIds.stream().map(Long::valueOf).toList())) {
+                priceArgs.add(String.valueOf(product.getId()));
+                priceArgs.add(String.valueOf(CartTotals.toMinorUnits(product.getPrice())));
+            }
+            if (priceArgs.isEmpty()) {
+                return;
+            }
+
+            long scanned = 0;
+            long drifted = 0;
+            List<String> chunk = new ArrayList<>(reconcileBatchSize);
+            for (String key : redissonClient.getKeys().getKeysByPattern(CART_PREFIX + "*" + SUMMARY_SUFFIX, reconcileBatchSize)) {
+                chunk.add(key);
+                if (chunk.size() >= reconcileBatchSize) {
+                    drifted += reprice(chunk, priceArgs);
+                    scanned += chunk.size();
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                drifted += reprice(chunk, priceArgs);
+                scanned += chunk.size();
+            }
+            if (drifted > 0) {
+                logger.info("购物车汇总校正完成，扫描 {} 个购物车，校正 {} 行", scanned, drifted);
+            }
+        } catch (Exception e) {
+            // 放回改价集合，下次重试
+            changed.addAll(productIds);
+            logger.error("购物车汇总校正失败，将在下次重试: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 批量对一组汇总执行改价校正，返回校正的行数
+     */
+    private long reprice(List<String> summaryKeys, List<Object> priceArgs) {
+        RBatch batch = redissonClient.createBatch();
+        List<RFuture<Long>> futures = new ArrayList<>(summaryKeys.size());
+        Object[] args = priceArgs.toArray();
+        for (String summaryKey : summaryKeys) {
+            String cartKey = summaryKey.substring(0, summaryKey.length() - SUMMARY_SUFFIX.length());
+            futures.add(batch.getScript(StringCodec.INSTANCE).evalAsync(RScript.Mode.READ_WRITE, REPRICE_SCRIPT,
+                    RScript.ReturnType.INTEGER, List.of(cartKey, summaryKey), args));
+        }
+        batch.execute();
+
+        long drifted = 0;
+        for (RFuture<Long> future : futures) {
+            drifted += future.toCompletableFuture().join();
+        }
+        return drifted;
+    }
+
+    /**
+     * 执行修改脚本，购物车或汇总尚未加载时先加载再重试
+     */
+    private List<Long> mutate(String lua, Long userId, Long productId, int value, long unitPriceMinor) {
+        RScript script = redissonClient.getScript(StringCodec.INSTANCE);
+        List<Object> keys = List.of(cartKey(userId), DIRTY_SET_KEY, summaryKey(userId));
+        Object[] args = {String.valueOf(productId), String.valueOf(value), String.valueOf(System.currentTimeMillis()),
+                String.valueOf(ttlSeconds), String.valueOf(userId), String.valueOf(unitPriceMinor)};
+
+        List<Long> reply = script.eval(RScript.Mode.READ_WRITE, lua, RScript.ReturnType.MULTI, keys, args);
+        if (reply.get(0) == 0) {
+            reload(userId);
+            reply = script.eval(RScript.Mode.READ_WRITE, lua, RScript.ReturnType.MULTI, keys, args);
+        }
+        return reply;
+    }
+
+    /**
+     * 确保购物车和汇总都已加载：购物车不在Redis中时从数据库读取，汇总缺失时按当前购物车重建
+     */
+    private void reload(Long userId) {
+        Map<String, String> fields = readCart(userId);
+        load(userId, fields.isEmpty() ? cartItemRepository.findByUserIdWithProduct(userId) : toCartItems(userId, fields));
+    }
+
+    /**
+     * 将购物车写入Redis（已存在时不覆盖），并在汇总缺失时按商品当前单价重建
+     */
+    private void load(Long userId, List<CartItem> items) {
+        Map<Long, Long> prices = loadPrices(items.stream().map(CartItem::getProductId).toList());
+
+        List<Object> args = new ArrayList<>(items.size() * 3 + 1);
+        args.add(String.valueOf(ttlSeconds));
+        for (CartItem item : items) {
+            LocalDateTime createdAt = item.getCreatedAt() != null ? item.getCreatedAt() : LocalDateTime.now();
+            args.add(String.valueOf(item.getProductId()));
+            args.add(item.getQuantity() + ":" + createdAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            args.add(String.valueOf(prices.getOrDefault(item.getProductId(), 0L)));
+        }
+
+        RScript script = redissonClient.getScript(StringCodec.INSTANCE);
+        script.eval(RScript.Mode.READ_WRITE, LOAD_SCRIPT, RScript.ReturnType.INTEGER,
+                List.of(cartKey(userId), summaryKey(userId)), args.toArray());
+    }
+
+    private Map<Long, Long> loadPrices(Collection<Long> productIds) {
+        Map<Long, Long> prices = new HashMap<>();
+        if (productIds.isEmpty()) {
+            return prices;
+        }
+        for (Product product : productCache.getAll(productIds).values()) {
+            prices.put(product.getId(), CartTotals.toMinorUnits(product.getPrice()));
+        }
+        return prices;
+    }
+
+    private Map<String, String> readCart(Long userId) {
+        return redissonClient.<String, String>getMap(cartKey(userId), StringCodec.INSTANCE).readAllMap();
+    }
+
+    private Map<String, String> readSummary(Long userId) {
+        return redissonClient.<String, String>getMap(summaryKey(userId), StringCodec.INSTANCE)
+                .getAll(Set.of("items", "qty", "amount"));
+    }
+
+    private List<CartItem> toCartItems(Long userId, Map<String, String> fields) {
+        List<CartItem> items = new ArrayList<>(fields.size());
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            if (LOADED_FIELD.equals(field.getKey())) {
+                continue;
+            }
+            items.add(toCartItem(userId, Long.valueOf(field.getKey()), field.getValue()));
+        }
+        items.sort(Comparator.comparing(CartItem::getCreatedAt).reversed());
+        return items;
+    }
+
+    private CartItem toCartItem(Long userId, Long productId, String value) {
+        int sep = value.indexOf(':');
+        CartItem item = new CartItem(userId, productId, Integer.valueOf(value.substring(0, sep)));
+        LocalDateTime createdAt = LocalDateTime.ofInstant(
+                Instant.ofEpochMilli(Long.parseLong(value.substring(sep + 1))), ZoneId.systemDefault());
+        item.setCreatedAt(createdAt);
+        return item;
+    }
+
+    private String cartKey(Long userId) {
+        return CART_PREFIX + userId;
+    }
+
+    private String summaryKey(Long userId) {
+        return CART_PREFIX + userId + SUMMARY_SUFFIX;
+    }
+}
@@ -2,19 +2,35 @@ package org.example.startup.util;
 
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.example.startup.model.User;
+import org.example.startup.service.PermissionRegistry;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.BitSet;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 @Component
 public class JwtUtil {
+    // 权限位图声明，旧版令牌使用逗号拼接的 permissions 声明
+    private static final String PERMISSION_BITS_CLAIM = "perms";
+    private static final String LEGACY_PERMISSIONS_CLAIM = "permissions";
+    
+    @Autowired
+    private PermissionRegistry permissionRegistry;
+    
     // JWT密钥，在生产环境中应该从配置文件或环境变量中读取
     @Value("${jwt.secret:mySecretKey123456789012345678901234567890}")
     private String jwtSecret;
@@ -23,8 +39,29 @@ public class JwtUtil {
     @Value("${jwt.expiration:86400000}")
     private long jwtExpiration;
     
+    // 已验证令牌缓存的容量和最长保留时间，条目最晚在令牌过期时失效
+    @Value("${jwt.cache.max-size:10000}")
+    private int cacheMaxSize;
+    
+    @Value("${jwt.cache.ttl-ms:300000}")
+    private long cacheTtlMillis;
+    
+    // 密钥和解析器线程安全，启动时创建一次
+    private SecretKey signingKey;
+    private JwtParser jwtParser;
+    
+    // 令牌摘要 -> 已验证令牌，同一令牌重复请求时跳过验签和声明解码
+    private LocalCache<String, VerifiedToken> verifiedTokens;
+    
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        jwtParser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+        verifiedTokens = new LocalCache<>(cacheMaxSize, cacheTtlMillis);
+    }
+    
     private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        return signingKey;
     }
     
     /**
@@ -43,13 +80,11 @@ public class JwtUtil {
                 .collect(Collectors.joining(","));
         claims.put("roles", roles);
         
-        // 添加权限信息
-        String permissions = user.getRoles().stream()
+        // 添加权限信息，编码为位图
+        String permissions = permissionRegistry.encode(user.getRoles().stream()
                 .flatMap(role -> role.getPermissions().stream())
-                .map(permission -> permission.getName())
-                .distinct()
-                .collect(Collectors.joining(","));
-        claims.put("permissions", permissions);
+                .collect(Collectors.toList()));
+        claims.put(PERMISSION_BITS_CLAIM, permissions);
         
         return createToken(claims, user.getUsername());
     }
@@ -70,6 +105,72 @@ public class JwtUtil {
                 .compact();
     }
     
+    /**
+     * 解析并验证令牌，一次验签得到用户ID、角色、权限和过期时间
+     * @throws JwtException 令牌无效、签名错误或已过期
+     */
+    public VerifiedToken verify(String token) {
+        String digest = digest(token);
+        VerifiedToken cached = verifiedTokens.get(digest);
+        if (cached != null) {
+            if (!cached.isExpired()) {
+                return cached;
+            }
+            verifiedTokens.invalidate(digest);
+        }
+        
+        VerifiedToken verified = parse(token);
+        long remaining = verified.getExpiresAt() - System.currentTimeMillis();
+        if (remaining > 0) {
+            verifiedTokens.put(digest, verified, Math.min(remaining, cacheTtlMillis));
+        }
+        return verified;
+    }
+    
+    /**
+     * 获取已验证令牌缓存统计信息
+     */
+    public Map<String, Object> getCacheStats() {
+        return verifiedTokens.getStats();
+    }
+    
+    private VerifiedToken parse(String token) {
+        Claims claims = getAllClaimsFromToken(token);
+        if (claims.getSubject() == null) {
+            throw new MalformedJwtException("令牌缺少用户名");
+        }
+        BitSet permissionBits;
+        List<String> permissions;
+        String encoded = claims.get(PERMISSION_BITS_CLAIM, String.class);
+        if (encoded != null) {
+            permissionBits = permissionRegistry.decode(encoded);
+            permissions = permissionRegistry.namesOf(permissionBits);
+        } else {
+            permissions = VerifiedToken.split(claims.get(LEGACY_PERMISSIONS_CLAIM, String.class));
+            permissionBits = permissionRegistry.fromNames(permissions);
+        }
+        Date expiration = claims.getExpiration();
+        return new VerifiedToken(
+                claims.get("userId", Long.class),
+                claims.getSubject(),
+                claims.get("roles", String.class),
+                permissions,
+                permissionBits,
+                expiration != null ? expiration.getTime() : Long.MAX_VALUE);
+    }
+    
+    /**
+     * 令牌的SHA-256摘要，缓存中不保存令牌原文
+     */
+    private String digest(String token) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(sha256.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+    
     /**
      * 从令牌中获取用户名
      */
@@ -94,11 +195,10 @@ public class JwtUtil {
     }
     
     /**
-     * 从令牌中获取权限
+     * 从令牌中获取权限（逗号分隔）
      */
     public String getPermissionsFromToken(String token) {
-        Claims claims = getAllClaimsFromToken(token);
-        return claims.get("permissions", String.class);
+        return String.join(",", verify(token).getPermissions());
     }
     
     /**
@@ -121,11 +221,7 @@ public class JwtUtil {
      */
     private Claims getAllClaimsFromToken(String token) {
         try {
-            return Jwts.parserBuilder()
-                    .setSigningKey(getSigningKey())
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
+            return jwtParser.parseClaimsJws(token).getBody();
         } catch (ExpiredJwtException e) {
 
             throw e;
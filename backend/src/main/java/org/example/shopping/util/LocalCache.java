@@ -0,0 +1,173 @@
+package org.example.startup.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内有界缓存，支持按条目过期时间淘汰和按容量LRU淘汰
+ * 内部按键的哈希分成多个段，每段各自加锁，降低高并发读写时的锁竞争
+ */
+public class LocalCache<K, V> {
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment<K, V>[] segments;
+    private final long defaultTtlNanos;
+
+    // 统计信息
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize 最大条目数
+     * @param defaultTtlMillis 默认过期时间（毫秒）
+     */
+    @SuppressWarnings("unchecked")
+    public LocalCache(int maxSize, long defaultTtlMillis) {
+        this.defaultTtlNanos = TimeUnit.MILLISECONDS.toNanos(defaultTtlMillis);
+        this.segments = new Segment[SEGMENT_COUNT];
+        int segmentCapacity = Math.max(1, (maxSize + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment<>(segmentCapacity, evictions);
+        }
+    }
+
+    /**
+     * 获取缓存值，不存在或已过期返回null
+     */
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        CacheEntry<V> entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+            if (entry != null && entry.expiresAt - System.nanoTime() <= 0) {
+                segment.remove(key);
+                evictions.increment();
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * 使用默认过期时间写入缓存
+     */
+    public void put(K key, V value) {
+        putNanos(key, value, defaultTtlNanos);
+    }
+
+    /**
+     * 使用指定过期时间写入缓存
+     */
+    public void put(K key, V value, long ttlMillis) {
+        putNanos(key, value, TimeUnit.MILLISECONDS.toNanos(ttlMillis));
+    }
+
+    private void putNanos(K key, V value, long ttlNanos) {
+        if (ttlNanos <= 0) {
+            return;
+        }
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, new CacheEntry<>(value, System.nanoTime() + ttlNanos));
+        }
+    }
+
+    /**
+     * 删除指定缓存
+     */
+    public void invalidate(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * 当前条目数（含尚未清理的过期条目）
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 获取命中、未命中、淘汰等统计信息
+     */
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", size());
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("evictions", evictions.sum());
+        stats.put("hitRate", total == 0 ? 0.0 : (double) hitCount / total);
+        return stats;
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENT_COUNT - 1)];
+    }
+
+    private static final class CacheEntry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private CacheEntry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * 按访问顺序排列的段，超过容量时淘汰最久未访问的条目
+     */
+    private static final class Segment<K, V> extends LinkedHashMap<K, CacheEntry<V>> {
+        private final int capacity;
+        private final LongAdder evictions;
+
+        private Segment(int capacity, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
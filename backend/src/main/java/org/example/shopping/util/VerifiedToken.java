@@ -0,0 +1,124 @@
+package org.example.startup.util;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.StringUtils;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 已验证的JWT令牌
+ * 每个请求只在认证过滤器中解析并验签一次，结果作为认证主体放入安全上下文，同时写入请求属性，
+ * 控制器直接读取用户ID、角色和权限，不再重复解析令牌。
+ */
+public class VerifiedToken implements Principal {
+
+    /**
+     * 请求属性名
+     */
+    public static final String REQUEST_ATTRIBUTE = VerifiedToken.class.getName();
+
+    private final Long userId;
+    private final String username;
+    private final List<String> roles;
+    private final List<String> permissions;
+    // 权限位图，位序号见 PermissionRegistry
+    private final BitSet permissionBits;
+    private final List<GrantedAuthority> authorities;
+    private final long expiresAt;
+
+    public VerifiedToken(Long userId, String username, String roles,
+                         List<String> permissions, BitSet permissionBits, long expiresAt) {
+        this.userId = userId;
+        this.username = username;
+        this.roles = split(roles);
+        this.permissions = permissions;
+        this.permissionBits = permissionBits;
+        this.expiresAt = expiresAt;
+
+        List<GrantedAuthority> list = new ArrayList<>(this.roles.size() + this.permissions.size());
+        for (String role : this.roles) {
+            list.add(new SimpleGrantedAuthority("ROLE_" + role));
+        }
+        for (String permission : this.permissions) {
+            list.add(new SimpleGrantedAuthority(permission));
+        }
+        this.authorities = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * 读取当前请求已验证的令牌，未认证时返回null
+     */
+    public static VerifiedToken fromRequest(HttpServletRequest request) {
+        Object attribute = request.getAttribute(REQUEST_ATTRIBUTE);
+        if (attribute instanceof VerifiedToken) {
+            return (VerifiedToken) attribute;
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof VerifiedToken) {
+            return (VerifiedToken) authentication.getPrincipal();
+        }
+        return null;
+    }
+
+    /**
+     * 读取当前请求的用户ID，未认证时抛出异常
+     */
+    public static Long currentUserId(HttpServletRequest request) {
+        VerifiedToken token = fromRequest(request);
+        if (token == null || token.getUserId() == null) {
+            throw new RuntimeException("无法获取用户ID，请检查认证状态");
+        }
+        return token.getUserId();
+    }
+
+    static List<String> split(String value) {
+        if (!StringUtils.hasText(value)) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(StringUtils::hasText)
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    /**
+     * 是否拥有指定位序号的权限
+     */
+    public boolean hasPermission(int bit) {
+        return bit >= 0 && permissionBits.get(bit);
+    }
+
+    /**
+     * 令牌是否已过期
+     */
+    public boolean isExpired() {
+        return System.currentTimeMillis() >= expiresAt;
+    }
+
+    @Override
+    public String getName() {
+        return username;
+    }
+
+    @Override
+    public String toString() {
+        return username;
+    }
+
+    public Long getUserId() { return userId; }
+    public String getUsername() { return username; }
+    public List<String> getRoles() { return roles; }
+    public List<String> getPermissions() { return permissions; }
+    public List<GrantedAuthority> getAuthorities() { return authorities; }
+    public long getExpiresAt() { return expiresAt; }
+}
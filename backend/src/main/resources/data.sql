@@ -117,11 +117,14 @@ CREATE TABLE IF NOT EXISTS products (
     image_url VARCHAR(500),
     popularity INT DEFAULT 0,
     stock INT NOT NULL DEFAULT 0,
+    category VARCHAR(64),
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     INDEX idx_name (name),
-    INDEX idx_price (price),
-    INDEX idx_popularity (popularity),
+    INDEX idx_price_id (price, id),
+    INDEX idx_popularity_id (popularity, id),
+    INDEX idx_category_popularity_id (category, popularity, id),
+    INDEX idx_category_price_id (category, price, id),
     INDEX idx_stock (stock)
 );
 
@@ -159,4 +162,35 @@ INSERT INTO role_permissions (role_id, permission_id)
 SELECT r.id, p.id 
 FROM roles r, permissions p 
 WHERE r.name = 'MERCHANT' AND p.name IN ('CART_READ', 'CART_WRITE')
-ON DUPLICATE KEY UPDATE role_id = VALUES(role_id);
\ No newline at end of file
+ON DUPLICATE KEY UPDATE role_id = VALUES(role_id);
+-- 主键号段表，订单和订单明细按号段预分配ID，使Hibernate可以批量插入
+CREATE TABLE IF NOT EXISTS id_sequences (
+    seq_name VARCHAR(64) NOT NULL PRIMARY KEY,
+    next_val BIGINT NOT NULL
+);
+
+-- 创建订单表
+CREATE TABLE IF NOT EXISTS orders (
+    id BIGINT NOT NULL PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    total_amount DECIMAL(12,2) NOT NULL,
+    item_count INT NOT NULL,
+    total_quantity INT NOT NULL,
+    status VARCHAR(32) NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
+    INDEX idx_user_id_id (user_id, id)
+);
+
+-- 创建订单明细表
+CREATE TABLE IF NOT EXISTS order_lines (
+    id BIGINT NOT NULL PRIMARY KEY,
+    order_id BIGINT NOT NULL,
+    product_id BIGINT NOT NULL,
+    product_name VARCHAR(255) NOT NULL,
+    unit_price DECIMAL(10,2) NOT NULL,
+    quantity INT NOT NULL,
+    line_amount DECIMAL(12,2) NOT NULL,
+    FOREIGN KEY (order_id) REFERENCES orders(id) ON DELETE CASCADE,
+    INDEX idx_order_id (order_id)
+);
@@ -0,0 +1,62 @@
+package org.example.startup.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimitFilterTest {
+
+    @Test
+    void parsesRules() {
+        List<RateLimitFilter.Rule> rules = RateLimitFilter.parseRules(
+                "POST /api/user/login=ip:10:60000; * /api/cart/**=user:5:10000;");
+
+        assertEquals(2, rules.size());
+        assertEquals("POST /api/user/login=ip:10:60000", rules.get(0).toString());
+        assertEquals("* /api/cart/**=user:5:10000", rules.get(1).toString());
+    }
+
+    @Test
+    void parsesBlankConfigAsNoRules() {
+        assertTrue(RateLimitFilter.parseRules("").isEmpty());
+        assertTrue(RateLimitFilter.parseRules(null).isEmpty());
+    }
+
+    @Test
+    void rejectsMalformedRules() {
+        assertThrows(IllegalArgumentException.class, () -> RateLimitFilter.parseRules("/api/user/login=ip:10:60000"));
+        assertThrows(IllegalArgumentException.class, () -> RateLimitFilter.parseRules("POST /api/user/login=ip:10"));
+        assertThrows(IllegalArgumentException.class, () -> RateLimitFilter.parseRules("POST /api/user/login=host:10:60000"));
+        assertThrows(IllegalArgumentException.class, () -> RateLimitFilter.parseRules("POST /api/user/login=ip:0:60000"));
+        assertThrows(NumberFormatException.class, () -> RateLimitFilter.parseRules("POST /api/user/login=ip:x:60000"));
+    }
+
+    @Test
+    void allowsBurstUpToLimitThenRejects() {
+        RateLimitFilter filter = new RateLimitFilter();
+        // 一小时3次，测试期间不会恢复额度
+        RateLimitFilter.Rule rule = RateLimitFilter.parseRules("POST /api/cart/checkout=user:3:3600000").get(0);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, filter.acquireLocal(rule, "u1"));
+        }
+        long wait = filter.acquireLocal(rule, "u1");
+        assertTrue(wait > 0);
+        // 拒绝不消耗额度，等待时间约为一次请求的间隔
+        assertTrue(wait <= 1_200_000_000_000L);
+    }
+
+    @Test
+    void countsKeysIndependently() {
+        RateLimitFilter filter = new RateLimitFilter();
+        RateLimitFilter.Rule rule = RateLimitFilter.parseRules("POST /api/user/login=ip:1:3600000").get(0);
+
+        assertEquals(0, filter.acquireLocal(rule, "ip1"));
+        assertTrue(filter.acquireLocal(rule, "ip1") > 0);
+        assertEquals(0, filter.acquireLocal(rule, "ip2"));
+    }
+}
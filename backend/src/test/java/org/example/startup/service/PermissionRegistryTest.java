@@ -0,0 +1,81 @@
+package org.example.startup.service;
+
+import org.example.startup.model.Permission;
+import org.example.startup.repository.PermissionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PermissionRegistryTest {
+
+    private PermissionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        PermissionRepository repository = mock(PermissionRepository.class);
+        when(repository.findAll()).thenReturn(List.of(
+                permission(1L, "USER_READ"),
+                permission(2L, "USER_WRITE"),
+                permission(11L, "PRODUCT_READ")));
+        registry = new PermissionRegistry();
+        ReflectionTestUtils.setField(registry, "permissionRepository", repository);
+    }
+
+    @Test
+    void usesIdMinusOneAsBit() {
+        assertEquals(0, registry.bitOf("USER_READ"));
+        assertEquals(10, registry.bitOf("PRODUCT_READ"));
+        assertEquals(-1, registry.bitOf("UNKNOWN"));
+    }
+
+    @Test
+    void encodeAndDecodeRoundTrip() {
+        String encoded = registry.encode(List.of(permission(1L, "USER_READ"), permission(11L, "PRODUCT_READ")));
+        BitSet bits = registry.decode(encoded);
+
+        assertEquals(2, bits.cardinality());
+        assertTrue(bits.get(0));
+        assertTrue(bits.get(10));
+        assertEquals(List.of("USER_READ", "PRODUCT_READ"), registry.namesOf(bits));
+    }
+
+    @Test
+    void decodesEmptyClaimAsNoPermissions() {
+        assertTrue(registry.decode(null).isEmpty());
+        assertTrue(registry.decode("").isEmpty());
+        assertEquals(List.of(), registry.namesOf(new BitSet()));
+    }
+
+    @Test
+    void skipsUnknownBits() {
+        BitSet bits = new BitSet();
+        bits.set(1);
+        bits.set(5);
+        bits.set(40);
+
+        assertEquals(List.of("USER_WRITE"), registry.namesOf(bits));
+    }
+
+    @Test
+    void convertsLegacyNames() {
+        BitSet bits = registry.fromNames(List.of("USER_WRITE", "UNKNOWN"));
+
+        assertEquals(1, bits.cardinality());
+        assertTrue(bits.get(1));
+    }
+
+    private static Permission permission(Long id, String name) {
+        Permission permission = new Permission();
+        permission.setId(id);
+        permission.setName(name);
+        return permission;
+    }
+}
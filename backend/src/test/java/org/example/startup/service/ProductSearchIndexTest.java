@@ -0,0 +1,39 @@
+package org.example.startup.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductSearchIndexTest {
+
+    @Test
+    void lowercasesAsciiWordsAndSplitsOnPunctuation() {
+        assertEquals(List.of("iphone", "15", "pro"), ProductSearchIndex.tokenize("iPhone 15-Pro", false));
+    }
+
+    @Test
+    void indexesCjkAsUnigramsAndBigrams() {
+        assertEquals(List.of("手", "机", "壳", "手机", "机壳"), ProductSearchIndex.tokenize("手机壳", false));
+    }
+
+    @Test
+    void queriesCjkRunsByBigramsOnly() {
+        assertEquals(List.of("手机", "机壳"), ProductSearchIndex.tokenize("手机壳", true));
+        // 单个汉字没有二元组，仍按单字检索
+        assertEquals(List.of("壳"), ProductSearchIndex.tokenize("壳", true));
+    }
+
+    @Test
+    void splitsMixedScripts() {
+        assertEquals(List.of("usb", "数据", "据线"), ProductSearchIndex.tokenize("USB数据线", true));
+    }
+
+    @Test
+    void returnsNoTermsForBlankText() {
+        assertTrue(ProductSearchIndex.tokenize(null, true).isEmpty());
+        assertTrue(ProductSearchIndex.tokenize("  ,. ", false).isEmpty());
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.startup.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LocalCacheTest {
+
+    // 16个段，容量32时每段2个条目；整数键按低4位分段，0、16、32落在同一段
+    @Test
+    void evictsLeastRecentlyUsedEntryWithinSegment() {
+        LocalCache<Integer, String> cache = new LocalCache<>(32, 60000);
+        cache.put(0, "a");
+        cache.put(16, "b");
+        // 访问0后，16成为最久未访问的条目
+        assertEquals("a", cache.get(0));
+        cache.put(32, "c");
+
+        assertEquals("a", cache.get(0));
+        assertNull(cache.get(16));
+        assertEquals("c", cache.get(32));
+        assertEquals(1L, cache.getStats().get("evictions"));
+    }
+
+    @Test
+    void expiresEntriesAfterTtl() throws InterruptedException {
+        LocalCache<String, String> cache = new LocalCache<>(100, 60000);
+        cache.put("short", "v", 1);
+        cache.put("long", "v");
+        Thread.sleep(20);
+
+        assertNull(cache.get("short"));
+        assertEquals("v", cache.get("long"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void ignoresNonPositiveTtl() {
+        LocalCache<String, String> cache = new LocalCache<>(100, 60000);
+        cache.put("key", "v", 0);
+
+        assertNull(cache.get("key"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void invalidateRemovesEntries() {
+        LocalCache<String, String> cache = new LocalCache<>(100, 60000);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.invalidate("a");
+
+        assertNull(cache.get("a"));
+        assertEquals("2", cache.get("b"));
+
+        cache.invalidateAll();
+        assertNull(cache.get("b"));
+        assertEquals(0, cache.size());
+    }
+}